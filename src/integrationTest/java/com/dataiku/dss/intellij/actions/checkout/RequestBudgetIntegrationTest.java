@@ -0,0 +1,263 @@
+package com.dataiku.dss.intellij.actions.checkout;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import com.dataiku.dss.intellij.MonitoredFileSystem;
+import com.dataiku.dss.intellij.MonitoredFilesIndex;
+import com.dataiku.dss.intellij.MonitoredLibrary;
+import com.dataiku.dss.intellij.MonitoredPlugin;
+import com.dataiku.dss.intellij.SynchronizeRequest;
+import com.dataiku.dss.intellij.SynchronizeSummary;
+import com.dataiku.dss.intellij.SynchronizeWorker;
+import com.dataiku.dss.intellij.config.DssInstance;
+import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.model.DSSClient;
+import com.dataiku.dss.model.FakeDssServer;
+import com.dataiku.dss.model.dss.Plugin;
+import com.dataiku.dss.model.dss.RecipeAndPayload;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.HeavyPlatformTestCase;
+import com.intellij.testFramework.PsiTestUtil;
+import com.intellij.testFramework.ThreadTracker;
+
+/**
+ * Checks out & synchronizes large plugins and libraries against a local fake of DSS, and checks the number of requests, the bytes
+ * transferred and the time taken. In particular, synchronizing a plugin in which nothing changed must cost a single listing request,
+ * whatever its number of files.
+ */
+public class RequestBudgetIntegrationTest extends HeavyPlatformTestCase {
+    private static final String INSTANCE_ID = "fake-dss";
+    private static final String PLUGIN_ID = "big-plugin";
+    private static final String PROJECT_KEY = "BIG_PROJECT";
+    private static final int FILE_COUNT = 10_000;
+    private static final int FILES_PER_FOLDER = 100;
+
+    // Generous enough for slow build machines, yet far below the cost of one request per file.
+    private static final long CHECKOUT_BUDGET_MILLIS = 60_000;
+    private static final long PER_FILE_CHECKOUT_BUDGET_MILLIS = 180_000;
+    private static final long SYNCHRONIZATION_BUDGET_MILLIS = 20_000;
+
+    private FakeDssServer server;
+    private DssInstance dssInstance;
+    private DssSettings settings;
+    private VirtualFile contentRoot;
+    private boolean backgroundSynchronizationEnabled;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Pools of the plugin (and of the fake server) and pooled HTTP clients are shared by all tests.
+        ThreadTracker.longRunningThreadCreated(getTestRootDisposable(), "DSS ", "Connection evictor");
+        // The background synchronizer of the IDE must not send requests of its own when files are checked out or modified.
+        DssSettings.DssConfig ideConfig = DssSettings.getInstance().getState();
+        backgroundSynchronizationEnabled = ideConfig.enableBackgroundSynchronization;
+        ideConfig.enableBackgroundSynchronization = false;
+
+        server = new FakeDssServer();
+        dssInstance = new DssInstance(INSTANCE_ID, "Fake DSS", server.getBaseUrl(), FakeDssServer.API_KEY);
+        settings = new DssSettings();
+        DssSettings.DssConfig config = new DssSettings.DssConfig();
+        config.trackingEnabled = false;
+        settings.loadState(config);
+        settings.getDssInstances().add(dssInstance);
+
+        contentRoot = getTempDir().createVirtualDir();
+        PsiTestUtil.addContentRoot(getModule(), contentRoot);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            MonitoredFilesIndex index = MonitoredFilesIndex.getInstance();
+            for (MonitoredPlugin plugin : index.getMonitoredPlugins()) {
+                plugin.metadataFile.flushPendingWrite();
+                index.removeFromIndex(plugin);
+            }
+            for (MonitoredLibrary library : index.getMonitoredLibraries()) {
+                library.metadataFile.flushPendingWrite();
+                index.removeFromIndex(library);
+            }
+            if (server != null) {
+                server.close();
+            }
+            DssSettings.getInstance().getState().enableBackgroundSynchronization = backgroundSynchronizationEnabled;
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testCheckoutDownloadsPluginAsSingleArchive() throws Exception {
+        createRemotePlugin();
+
+        long start = System.nanoTime();
+        MonitoredPlugin plugin = checkoutPlugin();
+        assertWithinBudget("Checkout", start, CHECKOUT_BUDGET_MILLIS);
+
+        assertEquals(server.getRequests().toString(), 2, server.getRequests().size());
+        assertEquals(1, server.countRequests("GET", path -> path.equals("plugins/" + PLUGIN_ID + "/contents/")));
+        assertEquals(1, server.countRequests("GET", path -> path.equals("plugins/" + PLUGIN_ID + "/download")));
+        assertEquals(0, server.getBytesReceived());
+        assertLocalContent(plugin, 4242, 0);
+    }
+
+    public void testCheckoutWithoutArchivesDownloadsEachFileOnce() throws Exception {
+        createRemotePlugin();
+        server.setArchivesSupported(false);
+
+        long start = System.nanoTime();
+        MonitoredPlugin plugin = checkoutPlugin();
+        assertWithinBudget("Checkout without archive", start, PER_FILE_CHECKOUT_BUDGET_MILLIS);
+
+        // Listing, rejected archive download, then one download per file.
+        assertEquals(FILE_COUNT + 2, server.getRequests().size());
+        assertEquals(FILE_COUNT, server.countRequests("GET", path -> path.startsWith("plugins/" + PLUGIN_ID + "/contents/python-lib/")));
+        assertLocalContent(plugin, 4242, 0);
+    }
+
+    public void testIdleSynchronizationOnlyListsPlugin() throws Exception {
+        createRemotePlugin();
+        MonitoredPlugin plugin = checkoutPlugin();
+
+        // The first synchronization reads the files just checked out, the second one relies on their size & modification date.
+        for (int i = 0; i < 2; i++) {
+            server.clearRequests();
+            long start = System.nanoTime();
+            SynchronizeSummary summary = synchronize(plugin);
+            assertWithinBudget("Idle synchronization", start, SYNCHRONIZATION_BUDGET_MILLIS);
+
+            assertTrue(summary.isEmpty());
+            assertEquals(server.getRequests().toString(), 1, server.getRequests().size());
+            assertEquals(1, server.countRequests("GET", path -> path.equals("plugins/" + PLUGIN_ID + "/contents/")));
+            assertEquals(0, server.getBytesReceived());
+        }
+    }
+
+    public void testSynchronizationAfterLocalChangeUploadsOneFile() throws Exception {
+        createRemotePlugin();
+        MonitoredPlugin plugin = checkoutPlugin();
+        byte[] newContent = content(4242, 1);
+        VirtualFile file = plugin.baseDir.findFileByRelativePath(path(4242));
+        assertNotNull(file);
+        new VirtualFileManager(null, false).writeToVirtualFile(file, newContent, UTF_8);
+
+        server.clearRequests();
+        long start = System.nanoTime();
+        synchronize(plugin);
+        assertWithinBudget("Synchronization", start, SYNCHRONIZATION_BUDGET_MILLIS);
+
+        assertEquals(server.getRequests().toString(), 2, server.getRequests().size());
+        assertEquals(1, server.countRequests("POST", path -> path.equals("plugins/" + PLUGIN_ID + "/contents/" + path(4242))));
+        assertEquals(newContent.length, server.getBytesReceived());
+        assertEquals(new String(newContent, UTF_8), new String(server.getPluginFile(PLUGIN_ID, path(4242)), UTF_8));
+    }
+
+    public void testSynchronizationAfterRemoteChangeDownloadsOneFile() throws Exception {
+        createRemotePlugin();
+        MonitoredPlugin plugin = checkoutPlugin();
+        server.putPluginFile(PLUGIN_ID, path(4242), content(4242, 1));
+
+        server.clearRequests();
+        long start = System.nanoTime();
+        SynchronizeSummary summary = synchronize(plugin);
+        assertWithinBudget("Synchronization", start, SYNCHRONIZATION_BUDGET_MILLIS);
+
+        assertEquals(1, summary.locallyUpdated.size());
+        assertEquals(server.getRequests().toString(), 2, server.getRequests().size());
+        assertEquals(1, server.countRequests("GET", path -> path.equals("plugins/" + PLUGIN_ID + "/contents/" + path(4242))));
+        assertLocalContent(plugin, 4242, 1);
+    }
+
+    public void testIdleSynchronizationOnlyListsLibrary() throws Exception {
+        for (int i = 0; i < FILE_COUNT; i++) {
+            server.putLibraryFile(PROJECT_KEY, path(i), content(i, 0));
+        }
+        CheckoutModel model = newCheckoutModel(CheckoutModel.ItemType.LIBRARY);
+        model.libraryProjectKey = PROJECT_KEY;
+        new CheckoutWorker(settings, null, null, model).checkout();
+        MonitoredLibrary library = MonitoredFilesIndex.getInstance().getMonitoredLibraries().get(0);
+
+        server.clearRequests();
+        long start = System.nanoTime();
+        SynchronizeSummary summary = synchronize(library);
+        assertWithinBudget("Idle synchronization", start, SYNCHRONIZATION_BUDGET_MILLIS);
+
+        assertTrue(summary.isEmpty());
+        assertEquals(server.getRequests().toString(), 1, server.getRequests().size());
+        assertEquals(1, server.countRequests("GET", path -> path.equals("projects/" + PROJECT_KEY + "/libraries/contents/")));
+    }
+
+    public void testSavingLoadedRecipeSendsSingleRequest() throws Exception {
+        server.addProject(PROJECT_KEY, "Big project");
+        server.addRecipe(PROJECT_KEY, "compute_data", "python", "print('hello')");
+        DSSClient dssClient = dssInstance.createClient();
+        RecipeAndPayload recipe = dssClient.loadRecipe(PROJECT_KEY, "compute_data");
+
+        server.clearRequests();
+        assertNotNull(dssClient.saveRecipeContent(PROJECT_KEY, "compute_data", "print('world')", recipe));
+
+        assertEquals(server.getRequests().toString(), 1, server.getRequests().size());
+        assertEquals(1, server.countRequests("PUT", path -> path.equals("projects/" + PROJECT_KEY + "/recipes/compute_data")));
+        assertEquals("print('world')", server.getRecipePayload(PROJECT_KEY, "compute_data"));
+    }
+
+    private void createRemotePlugin() {
+        server.addPlugin(PLUGIN_ID);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            server.putPluginFile(PLUGIN_ID, path(i), content(i, 0));
+        }
+    }
+
+    private MonitoredPlugin checkoutPlugin() throws IOException {
+        CheckoutModel model = newCheckoutModel(CheckoutModel.ItemType.PLUGIN);
+        Plugin plugin = new Plugin();
+        plugin.id = PLUGIN_ID;
+        model.plugins = singletonList(plugin);
+        new CheckoutWorker(settings, null, null, model).checkout();
+
+        VirtualFile baseDir = contentRoot.findChild(PLUGIN_ID);
+        assertNotNull(baseDir);
+        return (MonitoredPlugin) MonitoredFilesIndex.getInstance().getMonitoredFileSystemFromBaseDir(baseDir);
+    }
+
+    private CheckoutModel newCheckoutModel(CheckoutModel.ItemType itemType) {
+        CheckoutModel model = new CheckoutModel();
+        model.server = dssInstance;
+        model.serverClient = dssInstance.createClient();
+        model.itemType = itemType;
+        model.module = getModule();
+        return model;
+    }
+
+    private SynchronizeSummary synchronize(MonitoredFileSystem fileSystem) throws IOException {
+        SynchronizeRequest request = fileSystem instanceof MonitoredPlugin
+                ? new SynchronizeRequest(emptyList(), singletonList((MonitoredPlugin) fileSystem), emptyList())
+                : new SynchronizeRequest(emptyList(), emptyList(), singletonList((MonitoredLibrary) fileSystem));
+        return new SynchronizeWorker(null, settings, null, false).synchronizeWithDSS(request);
+    }
+
+    private static void assertWithinBudget(String operation, long startNanos, long budgetMillis) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue(String.format("%s took %d ms, budget is %d ms", operation, elapsedMillis, budgetMillis), elapsedMillis <= budgetMillis);
+    }
+
+    private static void assertLocalContent(MonitoredFileSystem fileSystem, int index, int revision) throws IOException {
+        File file = new File(VirtualFileManager.WriteBatch.toIoFile(fileSystem.baseDir), path(index));
+        assertEquals(new String(content(index, revision), UTF_8), new String(Files.readAllBytes(file.toPath()), UTF_8));
+    }
+
+    private static String path(int index) {
+        return String.format("python-lib/module%d/file%d.py", index / FILES_PER_FOLDER, index);
+    }
+
+    private static byte[] content(int index, int revision) {
+        return String.format("def function_%d():%n    return %d  # revision %d%n", index, index, revision).getBytes(UTF_8);
+    }
+}
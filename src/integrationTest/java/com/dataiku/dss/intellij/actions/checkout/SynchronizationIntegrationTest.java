@@ -0,0 +1,223 @@
+package com.dataiku.dss.intellij.actions.checkout;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.dataiku.dss.intellij.MonitoredFilesIndex;
+import com.dataiku.dss.intellij.MonitoredPlugin;
+import com.dataiku.dss.intellij.SynchronizeRequest;
+import com.dataiku.dss.intellij.SynchronizeSummary;
+import com.dataiku.dss.intellij.SynchronizeWorker;
+import com.dataiku.dss.intellij.config.DssInstance;
+import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.model.DSSClient;
+import com.dataiku.dss.model.FakeDssServer;
+import com.dataiku.dss.model.dss.FolderContent;
+import com.dataiku.dss.model.dss.Plugin;
+import com.dataiku.dss.model.metadata.DssFileMetadata;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.HeavyPlatformTestCase;
+import com.intellij.testFramework.PsiTestUtil;
+import com.intellij.testFramework.ThreadTracker;
+
+/**
+ * Synchronizes small plugins against a local fake of DSS behaving like the various versions of DSS, and checks what ends up in DSS.
+ */
+public class SynchronizationIntegrationTest extends HeavyPlatformTestCase {
+    private static final String INSTANCE_ID = "fake-dss";
+    private static final String PLUGIN_ID = "small-plugin";
+
+    private FakeDssServer server;
+    private DssInstance dssInstance;
+    private DssSettings settings;
+    private VirtualFile contentRoot;
+    private boolean backgroundSynchronizationEnabled;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ThreadTracker.longRunningThreadCreated(getTestRootDisposable(), "DSS ", "Connection evictor");
+        DssSettings.DssConfig ideConfig = DssSettings.getInstance().getState();
+        backgroundSynchronizationEnabled = ideConfig.enableBackgroundSynchronization;
+        ideConfig.enableBackgroundSynchronization = false;
+
+        server = new FakeDssServer();
+        dssInstance = new DssInstance(INSTANCE_ID, "Fake DSS", server.getBaseUrl(), FakeDssServer.API_KEY);
+        settings = new DssSettings();
+        DssSettings.DssConfig config = new DssSettings.DssConfig();
+        config.trackingEnabled = false;
+        settings.loadState(config);
+        settings.getDssInstances().add(dssInstance);
+
+        contentRoot = getTempDir().createVirtualDir();
+        PsiTestUtil.addContentRoot(getModule(), contentRoot);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            MonitoredFilesIndex index = MonitoredFilesIndex.getInstance();
+            for (MonitoredPlugin plugin : index.getMonitoredPlugins()) {
+                plugin.metadataFile.flushPendingWrite();
+                index.removeFromIndex(plugin);
+            }
+            if (server != null) {
+                server.close();
+            }
+            DssSettings.getInstance().getState().enableBackgroundSynchronization = backgroundSynchronizationEnabled;
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testLocallyDeletedFoldersAreDeletedWhenDssRejectsNonEmptyFolders() throws Exception {
+        server.putPluginFile(PLUGIN_ID, "python-lib/first/a.py", content("a"));
+        server.putPluginFile(PLUGIN_ID, "python-lib/first/nested/b.py", content("b"));
+        server.putPluginFile(PLUGIN_ID, "python-lib/second/c.py", content("c"));
+        server.putPluginFile(PLUGIN_ID, "python-lib/kept.py", content("kept"));
+        server.setNonEmptyFolderDeletionSupported(false);
+        MonitoredPlugin plugin = checkoutPlugin();
+
+        deleteLocally(plugin, "python-lib/first");
+        server.clearRequests();
+        SynchronizeSummary summary = synchronize(plugin);
+
+        assertEquals(summary.dssDeleted.toString(), 1, summary.dssDeleted.size());
+        assertFalse(server.hasPluginPath(PLUGIN_ID, "python-lib/first"));
+        assertNull(plugin.fsMetadata.findFile("python-lib/first"));
+        assertNull(plugin.fsMetadata.findFile("python-lib/first/nested/b.py"));
+        assertEquals(1, server.countRequests("DELETE", path -> path.equals(contentPath("python-lib/first/a.py"))));
+        assertEquals(1, server.countRequests("DELETE", path -> path.equals(contentPath("python-lib/first/nested/b.py"))));
+
+        // A rejected non-empty folder does not mean that DSS cannot delete folders: the next folder is deleted at once first.
+        deleteLocally(plugin, "python-lib/second");
+        server.clearRequests();
+        synchronize(plugin);
+
+        assertFalse(server.hasPluginPath(PLUGIN_ID, "python-lib/second"));
+        assertEquals(server.getRequests().toString(), 2, server.countRequests("DELETE", path -> path.equals(contentPath("python-lib/second"))));
+        assertEquals("kept", new String(server.getPluginFile(PLUGIN_ID, "python-lib/kept.py"), UTF_8));
+    }
+
+    public void testDeletingFolderAlreadyDeletedFromDssSucceeds() throws Exception {
+        server.putPluginFile(PLUGIN_ID, "python-lib/gone/a.py", content("a"));
+        DSSClient dssClient = dssInstance.createClient();
+        FolderContent folder = findFile(dssClient.listPluginFiles(PLUGIN_ID), "python-lib/gone");
+        assertNotNull(folder);
+        server.deletePluginPath(PLUGIN_ID, "python-lib/gone");
+
+        server.clearRequests();
+        dssClient.deletePluginFolder(PLUGIN_ID, folder);
+
+        assertEquals(server.getRequests().toString(), 1, server.getRequests().size());
+    }
+
+    public void testFirstSynchronizationUploadsLocalFilesAsArchive() throws Exception {
+        server.addPlugin(PLUGIN_ID);
+        MonitoredPlugin plugin = checkoutPlugin();
+        createLocally(plugin, "plugin.json", content("{}"));
+        createLocally(plugin, "python-lib/utils.py", content("utils"));
+        createLocally(plugin, "python-lib/sub/helpers.py", content("helpers"));
+
+        server.clearRequests();
+        SynchronizeSummary summary = synchronize(plugin);
+
+        assertEquals(summary.dssUpdated.toString(), 3, summary.dssUpdated.size());
+        assertEquals(server.getRequests().toString(), 2, server.getRequests().size());
+        assertEquals(1, server.countRequests("POST", path -> path.equals("plugins/" + PLUGIN_ID + "/actions/updateFromZip")));
+        assertRemoteAndTracked(plugin, "plugin.json", "{}");
+        assertRemoteAndTracked(plugin, "python-lib/utils.py", "utils");
+        assertRemoteAndTracked(plugin, "python-lib/sub/helpers.py", "helpers");
+        assertTrue(server.hasPluginPath(PLUGIN_ID, "python-lib/sub"));
+        assertNotNull(plugin.fsMetadata.findFile("python-lib/sub"));
+    }
+
+    public void testFirstSynchronizationUploadsEachFileWithoutArchives() throws Exception {
+        server.addPlugin(PLUGIN_ID);
+        server.setArchivesSupported(false);
+        MonitoredPlugin plugin = checkoutPlugin();
+        createLocally(plugin, "plugin.json", content("{}"));
+        createLocally(plugin, "python-lib/utils.py", content("utils"));
+
+        server.clearRequests();
+        synchronize(plugin);
+
+        assertEquals(1, server.countRequests("POST", path -> path.equals("plugins/" + PLUGIN_ID + "/actions/updateFromZip")));
+        assertEquals(1, server.countRequests("POST", path -> path.equals(contentPath("plugin.json"))));
+        assertEquals(1, server.countRequests("POST", path -> path.equals(contentPath("python-lib/utils.py"))));
+        assertRemoteAndTracked(plugin, "plugin.json", "{}");
+        assertRemoteAndTracked(plugin, "python-lib/utils.py", "utils");
+    }
+
+    private MonitoredPlugin checkoutPlugin() throws IOException {
+        CheckoutModel model = new CheckoutModel();
+        model.server = dssInstance;
+        model.serverClient = dssInstance.createClient();
+        model.itemType = CheckoutModel.ItemType.PLUGIN;
+        model.module = getModule();
+        Plugin plugin = new Plugin();
+        plugin.id = PLUGIN_ID;
+        model.plugins = singletonList(plugin);
+        new CheckoutWorker(settings, null, null, model).checkout();
+
+        VirtualFile baseDir = contentRoot.findChild(PLUGIN_ID);
+        assertNotNull(baseDir);
+        return (MonitoredPlugin) MonitoredFilesIndex.getInstance().getMonitoredFileSystemFromBaseDir(baseDir);
+    }
+
+    private SynchronizeSummary synchronize(MonitoredPlugin plugin) throws IOException {
+        SynchronizeRequest request = new SynchronizeRequest(emptyList(), singletonList(plugin), emptyList());
+        return new SynchronizeWorker(null, settings, null, false).synchronizeWithDSS(request);
+    }
+
+    private static void deleteLocally(MonitoredPlugin plugin, String path) throws IOException {
+        VirtualFile file = plugin.baseDir.findFileByRelativePath(path);
+        assertNotNull(file);
+        new VirtualFileManager(null, false).deleteVirtualFile(file);
+    }
+
+    private static void createLocally(MonitoredPlugin plugin, String path, byte[] content) throws IOException {
+        File file = new File(VirtualFileManager.WriteBatch.toIoFile(plugin.baseDir), path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content);
+        VfsUtil.markDirtyAndRefresh(false, true, true, plugin.baseDir);
+    }
+
+    private void assertRemoteAndTracked(MonitoredPlugin plugin, String path, String content) throws IOException {
+        byte[] remoteContent = server.getPluginFile(PLUGIN_ID, path);
+        assertNotNull(path, remoteContent);
+        assertEquals(content, new String(remoteContent, UTF_8));
+        DssFileMetadata trackedFile = plugin.fsMetadata.findFile(path);
+        assertNotNull(path, trackedFile);
+        assertEquals(VirtualFileManager.getContentHash(content(content)), trackedFile.contentHash);
+    }
+
+    private static FolderContent findFile(List<FolderContent> files, String path) {
+        for (FolderContent file : files) {
+            if (file.path.equals(path)) {
+                return file;
+            }
+            FolderContent child = file.children == null ? null : findFile(file.children, path);
+            if (child != null) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static String contentPath(String path) {
+        return "plugins/" + PLUGIN_ID + "/contents/" + path;
+    }
+
+    private static byte[] content(String name) {
+        return name.getBytes(UTF_8);
+    }
+}
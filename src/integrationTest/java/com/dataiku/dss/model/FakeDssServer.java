@@ -0,0 +1,523 @@
+package com.dataiku.dss.model;
+
+import static com.google.common.base.Charsets.ISO_8859_1;
+import static com.google.common.base.Charsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.dataiku.dss.model.dss.FolderContent;
+import com.dataiku.dss.model.dss.Plugin;
+import com.dataiku.dss.model.dss.Project;
+import com.dataiku.dss.model.dss.Recipe;
+import com.dataiku.dss.model.dss.VersionTag;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-memory stand-in for the routes of the DSS public API used by the plugin (projects, recipes, plugin & library contents), listening on
+ * the loopback interface. Every request is recorded along with the number of bytes received and sent, so that tests can check how many
+ * requests (and how much data) an operation costs.
+ */
+public class FakeDssServer implements AutoCloseable {
+    public static final String API_KEY = "fake-api-key";
+    private static final String PUBLIC_API = "/public/api/";
+    private static final String RAW_CONTENT_TYPE = "application/octet-stream";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private static final Pattern PROJECTS = Pattern.compile("projects/");
+    private static final Pattern RECIPES = Pattern.compile("projects/([^/]+)/recipes/");
+    private static final Pattern RECIPE = Pattern.compile("projects/([^/]+)/recipes/([^/]+)");
+    private static final Pattern PLUGINS = Pattern.compile("plugins/");
+    private static final Pattern PLUGIN_ROUTE = Pattern.compile("plugins/([^/]+)/(contents|folders|download|actions)(?:/(.*))?");
+    private static final Pattern LIBRARY_ROUTE = Pattern.compile("projects/([^/]+)/libraries/(contents|folders|download|actions)(?:/(.*))?");
+
+    public static class RecordedRequest {
+        public final String method;
+        public final String path; // Relative to the public API, e.g. "plugins/my-plugin/contents/"
+        public final int status;
+        public final long bytesReceived;
+        public final long bytesSent;
+
+        RecordedRequest(String method, String path, int status, long bytesReceived, long bytesSent) {
+            this.method = method;
+            this.path = path;
+            this.status = status;
+            this.bytesReceived = bytesReceived;
+            this.bytesSent = bytesSent;
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + path + " -> " + status;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong clock = new AtomicLong(1_600_000_000_000L); // Modification dates, strictly increasing
+    private final Map<String, Project> projects = new LinkedHashMap<>();
+    private final Map<String, Map<String, JsonObject>> recipes = new HashMap<>(); // Recipe documents by project key & recipe name
+    private final Map<String, RemoteFileSystem> plugins = new LinkedHashMap<>();
+    private final Map<String, RemoteFileSystem> libraries = new HashMap<>();
+    private final List<RecordedRequest> requests = new ArrayList<>();
+    private volatile boolean archivesSupported = true;
+    private volatile boolean nonEmptyFolderDeletionSupported = true;
+
+    public FakeDssServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(8, new ThreadFactoryBuilder().setNameFormat("DSS fake server %d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.createContext(PUBLIC_API, this::handle);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * @param archivesSupported false to behave like versions of DSS that cannot download or upload plugins & libraries as zip archives.
+     */
+    public void setArchivesSupported(boolean archivesSupported) {
+        this.archivesSupported = archivesSupported;
+    }
+
+    /**
+     * @param nonEmptyFolderDeletionSupported false to reject the deletion of folders that are not empty, as some versions of DSS do.
+     */
+    public void setNonEmptyFolderDeletionSupported(boolean nonEmptyFolderDeletionSupported) {
+        this.nonEmptyFolderDeletionSupported = nonEmptyFolderDeletionSupported;
+    }
+
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+    //
+    // CONTENT
+    //
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+
+    public synchronized void addProject(String projectKey, String name) {
+        Project project = new Project();
+        project.projectKey = projectKey;
+        project.name = name;
+        projects.put(projectKey, project);
+    }
+
+    public synchronized void addRecipe(String projectKey, String recipeName, String type, String payload) {
+        Recipe recipe = new Recipe();
+        recipe.projectKey = projectKey;
+        recipe.name = recipeName;
+        recipe.type = type;
+        recipe.versionTag = new VersionTag("admin", clock.incrementAndGet(), 1);
+        JsonObject document = new JsonObject();
+        document.add("recipe", GSON.toJsonTree(recipe));
+        document.addProperty("payload", payload);
+        recipes.computeIfAbsent(projectKey, k -> new LinkedHashMap<>()).put(recipeName, document);
+    }
+
+    public synchronized String getRecipePayload(String projectKey, String recipeName) {
+        JsonObject document = recipes.getOrDefault(projectKey, Collections.emptyMap()).get(recipeName);
+        return document == null ? null : document.get("payload").getAsString();
+    }
+
+    public synchronized void addPlugin(String pluginId) {
+        plugins.computeIfAbsent(pluginId, k -> new RemoteFileSystem());
+    }
+
+    public synchronized void putPluginFile(String pluginId, String path, byte[] content) {
+        plugins.computeIfAbsent(pluginId, k -> new RemoteFileSystem()).putFile(path, content);
+    }
+
+    public synchronized byte[] getPluginFile(String pluginId, String path) {
+        RemoteFileSystem plugin = plugins.get(pluginId);
+        return plugin == null ? null : plugin.getFile(path);
+    }
+
+    /**
+     * Deletes a file or a folder (with its content) of a plugin, as if done by another user.
+     */
+    public synchronized void deletePluginPath(String pluginId, String path) {
+        RemoteFileSystem plugin = plugins.get(pluginId);
+        if (plugin != null) {
+            plugin.delete(path);
+        }
+    }
+
+    public synchronized boolean hasPluginPath(String pluginId, String path) {
+        RemoteFileSystem plugin = plugins.get(pluginId);
+        return plugin != null && plugin.exists(path);
+    }
+
+    public synchronized void putLibraryFile(String projectKey, String path, byte[] content) {
+        libraries.computeIfAbsent(projectKey, k -> new RemoteFileSystem()).putFile(path, content);
+    }
+
+    public synchronized byte[] getLibraryFile(String projectKey, String path) {
+        RemoteFileSystem library = libraries.get(projectKey);
+        return library == null ? null : library.getFile(path);
+    }
+
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+    //
+    // RECORDED REQUESTS
+    //
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+
+    public List<RecordedRequest> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public void clearRequests() {
+        synchronized (requests) {
+            requests.clear();
+        }
+    }
+
+    public int countRequests(String method, Predicate<String> path) {
+        return (int) getRequests().stream().filter(request -> request.method.equals(method) && path.test(request.path)).count();
+    }
+
+    public long getBytesReceived() {
+        return getRequests().stream().mapToLong(request -> request.bytesReceived).sum();
+    }
+
+    public long getBytesSent() {
+        return getRequests().stream().mapToLong(request -> request.bytesSent).sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+    //
+    // ROUTES
+    //
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(PUBLIC_API.length());
+        CountingInputStream body = new CountingInputStream(exchange.getRequestBody());
+        Response response;
+        try {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.startsWith("Basic ")) {
+                response = Response.error(401);
+            } else {
+                byte[] requestBody = ByteStreams.toByteArray(body);
+                response = route(method, path, requestBody, exchange.getRequestHeaders().getFirst("Accept"));
+            }
+        } catch (RuntimeException e) {
+            response = Response.error(500);
+        }
+        if (response.contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+        }
+        exchange.getResponseHeaders().set("DSS-Version", "fake");
+        exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body);
+        }
+        synchronized (requests) {
+            requests.add(new RecordedRequest(method, path, response.status, body.getCount(), response.body.length));
+        }
+    }
+
+    private synchronized Response route(String method, String path, byte[] requestBody, String accept) throws IOException {
+        Matcher matcher;
+        if ((matcher = PROJECTS.matcher(path)).matches() && method.equals("GET")) {
+            return Response.json(new ArrayList<>(projects.values()));
+        } else if ((matcher = RECIPES.matcher(path)).matches() && method.equals("GET")) {
+            List<JsonObject> result = new ArrayList<>();
+            for (JsonObject document : recipes.getOrDefault(matcher.group(1), Collections.emptyMap()).values()) {
+                result.add(document.getAsJsonObject("recipe"));
+            }
+            return Response.json(result);
+        } else if ((matcher = RECIPE.matcher(path)).matches()) {
+            return routeRecipe(method, matcher.group(1), matcher.group(2), requestBody);
+        } else if ((matcher = PLUGINS.matcher(path)).matches() && method.equals("GET")) {
+            List<Plugin> result = new ArrayList<>();
+            for (String pluginId : plugins.keySet()) {
+                Plugin plugin = new Plugin();
+                plugin.id = pluginId;
+                plugin.version = "1.0.0";
+                plugin.isDev = true;
+                result.add(plugin);
+            }
+            return Response.json(result);
+        } else if ((matcher = PLUGIN_ROUTE.matcher(path)).matches()) {
+            RemoteFileSystem plugin = plugins.get(matcher.group(1));
+            return plugin == null ? Response.error(404) : routeFileSystem(method, plugin, matcher.group(2), matcher.group(3), requestBody, accept, true);
+        } else if ((matcher = LIBRARY_ROUTE.matcher(path)).matches()) {
+            RemoteFileSystem library = libraries.get(matcher.group(1));
+            return library == null ? Response.error(404) : routeFileSystem(method, library, matcher.group(2), matcher.group(3), requestBody, accept, false);
+        }
+        return Response.error(404);
+    }
+
+    private Response routeRecipe(String method, String projectKey, String recipeName, byte[] requestBody) {
+        JsonObject document = recipes.getOrDefault(projectKey, Collections.emptyMap()).get(recipeName);
+        if (document == null) {
+            return Response.error(404);
+        }
+        if (method.equals("GET")) {
+            return Response.json(document);
+        } else if (method.equals("PUT")) {
+            JsonObject updated = JsonParser.parseString(new String(requestBody, UTF_8)).getAsJsonObject();
+            JsonObject versionTag = updated.getAsJsonObject("recipe").getAsJsonObject("versionTag");
+            versionTag.add("versionNumber", new JsonPrimitive(versionTag.get("versionNumber").getAsLong() + 1));
+            versionTag.add("lastModifiedOn", new JsonPrimitive(clock.incrementAndGet()));
+            recipes.get(projectKey).put(recipeName, updated);
+            return Response.json(updated);
+        }
+        return Response.error(405);
+    }
+
+    private Response routeFileSystem(String method, RemoteFileSystem fileSystem, String action, String path, byte[] requestBody, String accept, boolean plugin) throws IOException {
+        path = path == null ? "" : path;
+        switch (action) {
+            case "contents":
+                if (path.isEmpty()) {
+                    return method.equals("GET") ? Response.json(fileSystem.list()) : Response.error(405);
+                }
+                if (method.equals("GET")) {
+                    byte[] content = fileSystem.getFile(path);
+                    if (content == null) {
+                        return Response.error(404);
+                    }
+                    if (plugin || (accept != null && accept.contains(RAW_CONTENT_TYPE))) {
+                        return new Response(200, RAW_CONTENT_TYPE, content);
+                    }
+                    // Library files are returned as text, wrapped in a JSON document, unless their raw content is explicitly requested.
+                    FolderContent document = fileSystem.describe(path);
+                    document.data = new String(content, UTF_8);
+                    document.hasData = true;
+                    return Response.json(document);
+                } else if (method.equals("POST")) {
+                    fileSystem.putFile(path, requestBody);
+                    return Response.ok();
+                } else if (method.equals("DELETE")) {
+                    if (!nonEmptyFolderDeletionSupported && fileSystem.hasChildren(path)) {
+                        return Response.error(500);
+                    }
+                    return fileSystem.delete(path) ? Response.ok() : Response.error(404);
+                }
+                return Response.error(405);
+            case "folders":
+                if (!method.equals("POST") || path.isEmpty()) {
+                    return Response.error(405);
+                }
+                fileSystem.createFolder(path);
+                return Response.ok();
+            case "download":
+                if (!archivesSupported) {
+                    return Response.error(404);
+                }
+                return method.equals("GET") ? new Response(200, "application/zip", fileSystem.zip()) : Response.error(405);
+            default:
+                if (!archivesSupported || !path.equals("updateFromZip")) {
+                    return Response.error(404);
+                }
+                if (!method.equals("POST")) {
+                    return Response.error(405);
+                }
+                fileSystem.replaceWithZip(extractMultipartFile(requestBody));
+                return Response.ok();
+        }
+    }
+
+    /**
+     * Returns the content of the single file of a multipart form, delimited by the boundary line starting the form.
+     */
+    private static byte[] extractMultipartFile(byte[] form) {
+        String text = new String(form, ISO_8859_1); // One char per byte, so that indexes match
+        String delimiter = text.substring(0, text.indexOf("\r\n"));
+        int start = text.indexOf("\r\n\r\n") + 4;
+        int end = text.lastIndexOf("\r\n" + delimiter + "--");
+        if (start < 4 || end < start) {
+            throw new IllegalArgumentException("Invalid multipart form");
+        }
+        return Arrays.copyOfRange(form, start, end);
+    }
+
+    private static class Response {
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response ok() {
+            return new Response(200, JSON_CONTENT_TYPE, "{}".getBytes(UTF_8));
+        }
+
+        static Response json(Object value) {
+            return new Response(200, JSON_CONTENT_TYPE, GSON.toJson(value).getBytes(UTF_8));
+        }
+
+        static Response error(int status) {
+            return new Response(status, JSON_CONTENT_TYPE, ("{\"errorType\":\"" + status + "\"}").getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * Files & folders of a plugin or library, by path. Folders are implicitly created along with the files they contain, as in DSS.
+     */
+    private class RemoteFileSystem {
+        private final NavigableMap<String, RemoteEntry> entries = new TreeMap<>();
+
+        byte[] getFile(String path) {
+            RemoteEntry entry = entries.get(path);
+            return entry == null ? null : entry.content;
+        }
+
+        void putFile(String path, byte[] content) {
+            createParentFolders(path);
+            entries.put(path, new RemoteEntry(content, clock.incrementAndGet()));
+        }
+
+        void createFolder(String path) {
+            createParentFolders(path);
+            entries.putIfAbsent(path, new RemoteEntry(null, 0));
+        }
+
+        private void createParentFolders(String path) {
+            for (int end = path.indexOf('/'); end > 0; end = path.indexOf('/', end + 1)) {
+                entries.putIfAbsent(path.substring(0, end), new RemoteEntry(null, 0));
+            }
+        }
+
+        boolean exists(String path) {
+            return entries.containsKey(path);
+        }
+
+        boolean hasChildren(String path) {
+            return entries.containsKey(path) && !PathMaps.nestedUnder(entries, path).isEmpty();
+        }
+
+        boolean delete(String path) {
+            if (entries.remove(path) == null) {
+                return false;
+            }
+            PathMaps.nestedUnder(entries, path).clear();
+            return true;
+        }
+
+        FolderContent describe(String path) {
+            RemoteEntry entry = entries.get(path);
+            FolderContent result = new FolderContent();
+            result.name = path.substring(path.lastIndexOf('/') + 1);
+            result.path = path;
+            if (entry.content != null) {
+                result.mimeType = "text/plain";
+                result.size = entry.content.length;
+                result.lastModified = entry.lastModified;
+            } else {
+                result.children = new ArrayList<>();
+            }
+            return result;
+        }
+
+        List<FolderContent> list() {
+            List<FolderContent> roots = new ArrayList<>();
+            Map<String, FolderContent> folders = new HashMap<>();
+            // Sorted by path, so that folders are always listed before their content.
+            for (String path : entries.keySet()) {
+                FolderContent item = describe(path);
+                int slash = path.lastIndexOf('/');
+                (slash < 0 ? roots : folders.get(path.substring(0, slash)).children).add(item);
+                if (item.children != null) {
+                    folders.put(path, item);
+                }
+            }
+            return roots;
+        }
+
+        /**
+         * Replaces all files & folders by the content of the given zip archive, in which folders are entries ending with '/'.
+         */
+        void replaceWithZip(byte[] archive) throws IOException {
+            entries.clear();
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive), UTF_8)) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (entry.isDirectory()) {
+                        createFolder(entry.getName().substring(0, entry.getName().length() - 1));
+                    } else {
+                        putFile(entry.getName(), ByteStreams.toByteArray(zip));
+                    }
+                }
+            }
+        }
+
+        byte[] zip() throws IOException {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try (ZipOutputStream zip = new ZipOutputStream(result, UTF_8)) {
+                for (Map.Entry<String, RemoteEntry> entry : entries.entrySet()) {
+                    if (entry.getValue().content != null) {
+                        zip.putNextEntry(new ZipEntry(entry.getKey()));
+                        zip.write(entry.getValue().content);
+                        zip.closeEntry();
+                    }
+                }
+            }
+            return result.toByteArray();
+        }
+    }
+
+    private static class RemoteEntry {
+        final byte[] content; // null for folders
+        final long lastModified;
+
+        RemoteEntry(byte[] content, long lastModified) {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.dataiku.dss.intellij;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileSystem;
+
+/**
+ * Read-only VirtualFile backed by a java.io.File, so that benchmarks can run without the IDE (and its VFS). Like the VFS, the children
+ * of a directory are only listed once.
+ */
+class IoVirtualFile extends VirtualFile {
+    private final File file;
+    private VirtualFile[] children;
+
+    IoVirtualFile(File file) {
+        this.file = file;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @NotNull
+    @Override
+    public VirtualFileSystem getFileSystem() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public String getPath() {
+        return file.getPath().replace(File.separatorChar, '/');
+    }
+
+    @NotNull
+    @Override
+    public String getUrl() {
+        return "file://" + getPath();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return file.isDirectory();
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public VirtualFile getParent() {
+        File parent = file.getParentFile();
+        return parent == null ? null : new IoVirtualFile(parent);
+    }
+
+    @Override
+    public synchronized VirtualFile[] getChildren() {
+        if (children == null) {
+            File[] files = file.listFiles();
+            children = new VirtualFile[files == null ? 0 : files.length];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = new IoVirtualFile(files[i]);
+            }
+        }
+        return children;
+    }
+
+    @NotNull
+    @Override
+    public OutputStream getOutputStream(Object requestor, long newModificationStamp, long newTimeStamp) {
+        throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public byte[] contentsToByteArray() throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return file.lastModified();
+    }
+
+    @Override
+    public long getLength() {
+        return file.length();
+    }
+
+    @Override
+    public void refresh(boolean asynchronous, boolean recursive, @Nullable Runnable postRunnable) {
+    }
+
+    @NotNull
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new FileInputStream(file);
+    }
+}
@@ -0,0 +1,118 @@
+package com.dataiku.dss.intellij;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.model.metadata.DssFileMetadata;
+import com.dataiku.dss.model.metadata.DssMetadata;
+import com.dataiku.dss.model.metadata.DssPluginFileMetadata;
+import com.dataiku.dss.model.metadata.DssPluginMetadata;
+
+/**
+ * Writes of the metadata file (and of the data-blobs of the updated files) of a plugin with many tracked files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MetadataFileBenchmark {
+    private static final String INSTANCE = "benchmark";
+    private static final String PLUGIN_ID = "benchmark-plugin";
+
+    @Param({"1000", "10000", "50000"})
+    public int fileCount;
+
+    private File moduleContentRoot;
+    private MetadataFile metadataFile;
+    private DssPluginMetadata plugin;
+    private int revision = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        moduleContentRoot = BenchmarkFiles.createTempDirectory("dss-metadata-benchmark");
+        DssMetadata metadata = new DssMetadata();
+        metadata.version = MetadataFile.CURRENT_VERSION;
+        metadata.recipes = new ArrayList<>();
+        metadata.plugins = new ArrayList<>();
+        metadata.libraries = new ArrayList<>();
+        plugin = new DssPluginMetadata(INSTANCE, PLUGIN_ID, PLUGIN_ID);
+        metadata.plugins.add(plugin);
+        for (int i = 0; i < fileCount; i++) {
+            plugin.addOrUpdateFile(newFileMetadata(i));
+        }
+        metadataFile = new MetadataFile(moduleContentRoot, metadata);
+        metadataFile.flushNow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(moduleContentRoot);
+    }
+
+    /**
+     * Metadata file written again without any new blob, e.g. after the remote state of some files has been recorded.
+     */
+    @Benchmark
+    public MetadataFile flushUnchanged() throws IOException {
+        metadataFile.flushNow();
+        return metadataFile;
+    }
+
+    /**
+     * A single file updated: one blob written, the previous one deleted, and the metadata file written again.
+     */
+    @Benchmark
+    public MetadataFile flushOneUpdatedFile() throws IOException {
+        revision++;
+        plugin.addOrUpdateFile(newFileMetadata(revision % fileCount));
+        metadataFile.flushNow();
+        return metadataFile;
+    }
+
+    /**
+     * All files updated at once, e.g. when checking out a plugin again or after a branch switch in DSS.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public MetadataFile flushAllUpdatedFiles(AllFilesUpdated allFilesUpdated) throws IOException {
+        metadataFile.flushNow();
+        return metadataFile;
+    }
+
+    @State(Scope.Benchmark)
+    public static class AllFilesUpdated {
+        @Setup(Level.Invocation)
+        public void update(MetadataFileBenchmark benchmark) throws IOException {
+            benchmark.revision++;
+            for (int i = 0; i < benchmark.fileCount; i++) {
+                benchmark.plugin.addOrUpdateFile(benchmark.newFileMetadata(i));
+            }
+        }
+    }
+
+    private DssFileMetadata newFileMetadata(int index) throws IOException {
+        String path = String.format("python-lib/module%d/file%d.py", index / 100, index);
+        // Content that depends on the revision, so that updated files get a new blob
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 40; line++) {
+            content.append(String.format("value_%d_%d = %d  # revision %d%n", index, line, line * index, revision));
+        }
+        byte[] data = content.toString().getBytes(UTF_8);
+        return new DssPluginFileMetadata(INSTANCE, PLUGIN_ID, PLUGIN_ID + "/" + path, path, VirtualFileManager.getContentHash(data), data);
+    }
+}
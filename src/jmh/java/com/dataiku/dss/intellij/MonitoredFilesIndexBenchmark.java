@@ -0,0 +1,70 @@
+package com.dataiku.dss.intellij;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dataiku.dss.model.metadata.DssMetadata;
+import com.dataiku.dss.model.metadata.DssPluginMetadata;
+
+/**
+ * Lookup of the plugin enclosing a file, done for every VFS event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MonitoredFilesIndexBenchmark {
+    private static final int LOOKUP_COUNT = 1024; // Power of two
+
+    @Param({"100", "500"})
+    public int pluginCount;
+
+    private final MonitoredFilesIndex index = new MonitoredFilesIndex();
+    private IoVirtualFile[] filesInPlugins;
+    private IoVirtualFile[] filesOutsidePlugins;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < pluginCount; i++) {
+            File baseDir = new File(String.format("/home/user/PycharmProjects/project%d/plugin%d", i % 20, i));
+            DssMetadata metadata = new DssMetadata();
+            metadata.recipes = new ArrayList<>();
+            metadata.plugins = new ArrayList<>();
+            metadata.libraries = new ArrayList<>();
+            DssPluginMetadata plugin = new DssPluginMetadata("benchmark", "plugin" + i, "plugin" + i);
+            metadata.plugins.add(plugin);
+            index.index(new MonitoredPlugin(new IoVirtualFile(baseDir), new MetadataFile(baseDir, metadata), plugin));
+        }
+
+        // Fixed seed, so that all runs look up the same files
+        Random random = new Random(42);
+        filesInPlugins = new IoVirtualFile[LOOKUP_COUNT];
+        filesOutsidePlugins = new IoVirtualFile[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            int plugin = random.nextInt(pluginCount);
+            filesInPlugins[i] = new IoVirtualFile(new File(String.format("/home/user/PycharmProjects/project%d/plugin%d/python-lib/package/module%d/file%d.py", plugin % 20, plugin, i % 10, i)));
+            filesOutsidePlugins[i] = new IoVirtualFile(new File(String.format("/home/user/PycharmProjects/project%d/src/package/module%d/file%d.py", plugin % 20, i % 10, i)));
+        }
+    }
+
+    @Benchmark
+    public MonitoredPlugin lookupFileInPlugin() {
+        return index.getMonitoredPlugin(filesInPlugins[next++ & (LOOKUP_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public MonitoredPlugin lookupFileOutsidePlugins() {
+        return index.getMonitoredPlugin(filesOutsidePlugins[next++ & (LOOKUP_COUNT - 1)]);
+    }
+}
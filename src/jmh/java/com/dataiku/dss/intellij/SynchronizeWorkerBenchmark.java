@@ -0,0 +1,147 @@
+package com.dataiku.dss.intellij;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.model.DSSClient;
+import com.dataiku.dss.model.dss.FolderContent;
+import com.dataiku.dss.model.metadata.DssFileMetadata;
+import com.dataiku.dss.model.metadata.DssMetadata;
+import com.dataiku.dss.model.metadata.DssPluginFileMetadata;
+import com.dataiku.dss.model.metadata.DssPluginMetadata;
+
+/**
+ * Three-way comparison of the remote listing, the local files and the tracked files of a plugin in which nothing changed since last
+ * synchronization: the most frequent case for background synchronizations. The listing is returned by an in-process fake of DSSClient.
+ * <p>
+ * Only this case can be measured outside of the IDE: transferring files requires the VFS and the HTTP client pool of the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SynchronizeWorkerBenchmark {
+    private static final String INSTANCE = "benchmark";
+    private static final String PLUGIN_ID = "benchmark-plugin";
+    private static final int FILES_PER_FOLDER = 100;
+    private static final long REMOTE_LAST_MODIFIED = 1_600_000_000_000L;
+
+    @Param({"1000", "10000"})
+    public int fileCount;
+
+    /**
+     * "all" for a full synchronization, "subtree" when local changes were only made in one folder.
+     */
+    @Param({"all", "subtree"})
+    public String scope;
+
+    private File baseDir;
+    private MonitoredPlugin plugin;
+    private DSSClient dssClient;
+    private DssSettings settings;
+    private Set<String> dirtyPaths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        baseDir = BenchmarkFiles.createTempDirectory("dss-synchronize-benchmark");
+        DssMetadata metadata = new DssMetadata();
+        metadata.version = MetadataFile.CURRENT_VERSION;
+        metadata.recipes = new ArrayList<>();
+        metadata.plugins = new ArrayList<>();
+        metadata.libraries = new ArrayList<>();
+        DssPluginMetadata pluginMetadata = new DssPluginMetadata(INSTANCE, PLUGIN_ID, PLUGIN_ID);
+        metadata.plugins.add(pluginMetadata);
+
+        List<FolderContent> listing = new ArrayList<>();
+        for (int folderIndex = 0; folderIndex * FILES_PER_FOLDER < fileCount; folderIndex++) {
+            String folderName = "module" + folderIndex;
+            File folder = new File(baseDir, folderName);
+            if (!folder.mkdir()) {
+                throw new IOException("Unable to create directory " + folder);
+            }
+            FolderContent remoteFolder = newFolderContent(folderName, folderName, null, 0);
+            remoteFolder.children = new ArrayList<>();
+            listing.add(remoteFolder);
+            pluginMetadata.addOrUpdateFile(new DssPluginFileMetadata(INSTANCE, PLUGIN_ID, PLUGIN_ID + "/" + folderName, folderName, 0, (String) null));
+
+            for (int i = folderIndex * FILES_PER_FOLDER; i < Math.min(fileCount, (folderIndex + 1) * FILES_PER_FOLDER); i++) {
+                String fileName = "file" + i + ".py";
+                String path = folderName + "/" + fileName;
+                byte[] content = String.format("def function_%d():%n    return %d%n", i, i).getBytes(UTF_8);
+                File file = new File(folder, fileName);
+                Files.write(file.toPath(), content);
+                remoteFolder.children.add(newFolderContent(fileName, path, "text/x-python", content.length));
+
+                DssFileMetadata trackedFile = new DssPluginFileMetadata(INSTANCE, PLUGIN_ID, PLUGIN_ID + "/" + path, path, VirtualFileManager.getContentHash(content), (String) null);
+                trackedFile.remoteSize = content.length;
+                trackedFile.remoteLastModified = REMOTE_LAST_MODIFIED;
+                trackedFile.localSize = file.length();
+                trackedFile.localLastModified = file.lastModified();
+                pluginMetadata.addOrUpdateFile(trackedFile);
+            }
+        }
+
+        plugin = new MonitoredPlugin(new IoVirtualFile(baseDir), new MetadataFile(baseDir, metadata), pluginMetadata);
+        dssClient = new FakeDssClient(listing);
+        settings = new DssSettings();
+        dirtyPaths = "all".equals(scope) ? null : Collections.singleton("module0");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(baseDir);
+    }
+
+    @Benchmark
+    public MonitoredPlugin synchronizeUnchangedPlugin() throws IOException {
+        new SynchronizeWorker(null, settings, null, true).synchronizeFileSystem(dssClient, plugin, dirtyPaths);
+        return plugin;
+    }
+
+    private static FolderContent newFolderContent(String name, String path, String mimeType, long size) {
+        FolderContent result = new FolderContent();
+        result.name = name;
+        result.path = path;
+        result.mimeType = mimeType;
+        result.size = size;
+        result.lastModified = mimeType == null ? 0 : REMOTE_LAST_MODIFIED;
+        return result;
+    }
+
+    /**
+     * Returns a fixed listing. Any other request fails, as the HTTP client pool is only available in the IDE.
+     */
+    private static class FakeDssClient extends DSSClient {
+        private final List<FolderContent> listing;
+
+        FakeDssClient(List<FolderContent> listing) {
+            super("http://localhost", "benchmark", false);
+            this.listing = listing;
+        }
+
+        @Override
+        public List<FolderContent> listPluginFiles(String pluginId) {
+            return listing;
+        }
+    }
+}
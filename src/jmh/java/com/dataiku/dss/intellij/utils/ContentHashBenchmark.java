@@ -0,0 +1,45 @@
+package com.dataiku.dss.intellij.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Hashing of file contents, done for every local file that may have changed and for every downloaded file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentHashBenchmark {
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        // Fixed seed, so that all runs hash the same content
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+    }
+
+    @Benchmark
+    public long hashBytes() throws IOException {
+        return VirtualFileManager.getContentHash(content);
+    }
+
+    @Benchmark
+    public long hashStream() throws IOException {
+        return VirtualFileManager.getContentHash(new ByteArrayInputStream(content));
+    }
+}
@@ -8,23 +8,32 @@ import com.dataiku.dss.model.DSSClient;
 import com.dataiku.dss.model.dss.RecipeAndPayload;
 import com.dataiku.dss.model.metadata.DssFileMetadata;
 import com.google.common.base.Strings;
+import com.intellij.openapi.application.ApplicationActivationListener;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ApplicationComponent;
+import com.intellij.openapi.progress.BackgroundTaskQueue;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.VetoableProjectManagerListener;
 import com.intellij.openapi.vfs.*;
+import com.intellij.openapi.wm.IdeFrame;
+import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.dataiku.dss.intellij.SynchronizeUtils.*;
 import static com.dataiku.dss.intellij.utils.VirtualFileManager.getContentHash;
-import static com.google.common.base.Charsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class BackgroundSynchronizer implements ApplicationComponent {
@@ -34,13 +43,22 @@ public class BackgroundSynchronizer implements ApplicationComponent {
 
     private MonitoredFilesIndex monitoredFilesIndex;
     private SynchronizationNotifier synchronizationNotifier;
+    private RecipeCache recipeCache;
     private DataikuDSSPlugin dssPlugin;
     private DssSettings dssSettings;
 
     private SyncProjectManagerAdapter projectManagerAdapter;
     private ScheduledExecutorService executorService;
+    private BackgroundTaskQueue uploadQueue;
+    private final PendingChanges pendingChanges = new PendingChanges();
+    private final ReentrantLock synchronizationLock = new ReentrantLock(); // Held while synchronizing or flushing pending changes
+    private ScheduledFuture<?> pendingChangesFuture = null; // null if no flush is scheduled
     private int currentPollingInterval = -1; // Negative if not scheduled
-    private ScheduledFuture<?> scheduledFuture = null; // null if not scheduled
+    private PollingSchedule pollingSchedule = null; // null if not scheduled
+    private ScheduledFuture<?> scheduledFuture = null; // null if no poll is scheduled (not scheduled, paused or polling)
+    private long nextPollTime; // When the scheduled poll will run, in milliseconds since epoch
+    private boolean pollPaused = false; // true if a poll has been skipped because the IDE was inactive
+    private MessageBusConnection messageBusConnection;
     private VirtualFileAdapter virtualFileAdapter;
     private DssSettingsListener dssSettingsListener;
 
@@ -57,7 +75,9 @@ public class BackgroundSynchronizer implements ApplicationComponent {
         dssSettings = DssSettings.getInstance();
         monitoredFilesIndex = MonitoredFilesIndex.getInstance();
         synchronizationNotifier = SynchronizationNotifier.getInstance();
+        recipeCache = RecipeCache.getInstance();
         executorService = Executors.newSingleThreadScheduledExecutor();
+        uploadQueue = new BackgroundTaskQueue(null, "Saving to DSS");
 
         // At startup, synchronize everything, then poll DSS every X seconds if one (or more) monitored recipes has been updated on DSS side.
         if (dssSettings.isBackgroundSynchronizationEnabled()) {
@@ -75,15 +95,73 @@ public class BackgroundSynchronizer implements ApplicationComponent {
         // Whenever a monitored file is saved in IntelliJ, upload it onto DSS.
         virtualFileAdapter = new VirtualFileAdapter();
         LocalFileSystem.getInstance().addVirtualFileListener(virtualFileAdapter);
+
+        // Polls skipped while the IDE was inactive are caught up as soon as it is activated again.
+        messageBusConnection = ApplicationManager.getApplication().getMessageBus().connect();
+        messageBusConnection.subscribe(ApplicationActivationListener.TOPIC, new IdeActivationListener());
     }
 
-    private void scheduleSynchronization(long initialDelay) {
+    private synchronized void scheduleSynchronization(long initialDelay) {
         cancelSynchronization();
 
         // Create a new scheduling
-        currentPollingInterval = Math.max(10, dssSettings.getBackgroundSynchronizationPollIntervalInSeconds());
-        log.info(String.format("Scheduling background synchronization (polling every %d seconds after initial delay of %d seconds)", currentPollingInterval, initialDelay));
-        scheduledFuture = executorService.scheduleWithFixedDelay(this::runSynchronizer, initialDelay, currentPollingInterval, SECONDS);
+        currentPollingInterval = Math.max(PollingSchedule.MIN_INTERVAL_SECONDS, dssSettings.getBackgroundSynchronizationPollIntervalInSeconds());
+        pollingSchedule = new PollingSchedule(currentPollingInterval, dssSettings.isAdaptivePollingEnabled(), new Random());
+        log.info(String.format("Scheduling background synchronization (polling every %d seconds%s after initial delay of %d seconds)",
+                currentPollingInterval, dssSettings.isAdaptivePollingEnabled() ? " or less often while idle" : "", initialDelay));
+        scheduleNextPoll(SECONDS.toMillis(initialDelay));
+    }
+
+    private synchronized void scheduleNextPoll(long delayMillis) {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+        log.debug(String.format("Next background synchronization in %d ms", delayMillis));
+        nextPollTime = System.currentTimeMillis() + delayMillis;
+        scheduledFuture = executorService.schedule(this::poll, delayMillis, MILLISECONDS);
+    }
+
+    private void poll() {
+        synchronized (this) {
+            if (pollingSchedule == null) {
+                return; // Cancelled in the meantime
+            }
+            scheduledFuture = null;
+            if (dssSettings.isAdaptivePollingEnabled() && !ApplicationManager.getApplication().isActive()) {
+                log.debug("IDE is inactive, pausing background synchronization");
+                pollPaused = true;
+                return;
+            }
+        }
+        boolean changesSeen = runSynchronizer();
+        synchronized (this) {
+            // Unless cancelled, or brought forward by a local change while polling
+            if (pollingSchedule != null && scheduledFuture == null) {
+                pollingSchedule.pollCompleted(changesSeen);
+                scheduleNextPoll(pollingSchedule.nextDelayMillis());
+            }
+        }
+    }
+
+    /**
+     * Brings the next poll closer after a local change, as changes made on DSS side are more likely to follow.
+     */
+    private synchronized void onLocalChange() {
+        if (pollingSchedule != null) {
+            pollingSchedule.changeSeen();
+            long fastInterval = pollingSchedule.getFastIntervalMillis();
+            if (scheduledFuture != null && nextPollTime - System.currentTimeMillis() > fastInterval) {
+                scheduleNextPoll(fastInterval);
+            }
+        }
+    }
+
+    private synchronized void resumePolling() {
+        if (pollPaused && pollingSchedule != null) {
+            log.debug("IDE is active again, resuming background synchronization");
+            pollPaused = false;
+            scheduleNextPoll(NOW);
+        }
     }
 
     @Override
@@ -97,42 +175,152 @@ public class BackgroundSynchronizer implements ApplicationComponent {
         ProjectManager.getInstance().removeProjectManagerListener(projectManagerAdapter);
         projectManagerAdapter = null;
 
+        messageBusConnection.disconnect();
+
         cancelSynchronization();
+        synchronized (this) {
+            if (pendingChangesFuture != null) {
+                pendingChangesFuture.cancel(false);
+                pendingChangesFuture = null;
+            }
+        }
     }
 
-    private void cancelSynchronization() {
-        if (scheduledFuture != null) {
+    private synchronized void cancelSynchronization() {
+        if (pollingSchedule != null) {
             log.info(String.format("Cancelling background synchronization (was polling every %d seconds)", currentPollingInterval));
-            scheduledFuture.cancel(false);
-            scheduledFuture = null;
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+                scheduledFuture = null;
+            }
+            pollingSchedule = null;
+            pollPaused = false;
             currentPollingInterval = -1;
         }
     }
 
-    private void runSynchronizer() {
+    /**
+     * @return true if the synchronization brought changes (or conflicts).
+     */
+    private boolean runSynchronizer() {
+        synchronizationLock.lock();
         try {
             log.debug("RunSynchronizer...");
-            SynchronizeRequest request = buildRequest(monitoredFilesIndex);
-            if (!request.isEmpty()) {
-                try {
-                    SynchronizeSummary summary = new SynchronizeWorker(dssPlugin, dssSettings, new RecipeCache(dssSettings), true).synchronizeWithDSS(request);
-                    if (!summary.isEmpty()) {
-                        synchronizationNotifier.notifySuccess(summary, null);
-                    }
-                } catch (IOException e) {
-                    synchronizationNotifier.notifyFailure(e, null);
-                }
-            }
+            // Pending changes are part of the full synchronization, no need to flush them afterwards.
+            pendingChanges.clear();
+            return synchronize(buildRequest(monitoredFilesIndex));
         } catch (Exception e) {
             log.error("Caught exception while running synchronizer", e);
+            return false;
+        } finally {
+            synchronizationLock.unlock();
         }
     }
 
+    /**
+     * @return true if the synchronization brought changes (or conflicts).
+     */
+    private boolean synchronize(SynchronizeRequest request) {
+        if (!request.isEmpty()) {
+            try {
+                SynchronizeSummary summary = new SynchronizeWorker(dssPlugin, dssSettings, recipeCache, true).synchronizeWithDSS(request);
+                if (!summary.isEmpty()) {
+                    synchronizationNotifier.notifySuccess(summary, null);
+                    return true;
+                }
+            } catch (IOException e) {
+                synchronizationNotifier.notifyFailure(e, null);
+            }
+        }
+        return false;
+    }
+
     private SynchronizeRequest buildRequest(MonitoredFilesIndex monitoredFilesIndex) {
         return new SynchronizeRequest(monitoredFilesIndex.getMonitoredRecipeFiles(),
                 monitoredFilesIndex.getMonitoredPlugins(), monitoredFilesIndex.getMonitoredLibraries());
     }
 
+    private void requestUpload(String path, PendingChanges.Upload upload) {
+        pendingChanges.addUpload(path, upload);
+        schedulePendingChangesFlush();
+        onLocalChange();
+    }
+
+    private void requestSynchronization(MonitoredRecipeFile recipeFile) {
+        pendingChanges.addRecipeFile(recipeFile);
+        schedulePendingChangesFlush();
+        onLocalChange();
+    }
+
+    /**
+     * Requests the synchronization of the subtree of a plugin or library where a change was made.
+     *
+     * @param fileUrl URL of the changed file or folder, or null if changes may have been made anywhere in the file system.
+     */
+    private void requestSynchronization(MonitoredFileSystem fileSystem, @Nullable String fileUrl) {
+        if (fileSystem != null) {
+            pendingChanges.addFileSystem(fileSystem, getRelativePath(fileSystem, fileUrl));
+            schedulePendingChangesFlush();
+            onLocalChange();
+        }
+    }
+
+    @Nullable
+    private static String getRelativePath(MonitoredFileSystem fileSystem, @Nullable String fileUrl) {
+        String baseUrl = fileSystem.baseDir.getUrl();
+        if (fileUrl == null || !fileUrl.startsWith(baseUrl + "/")) {
+            return null;
+        }
+        return fileUrl.substring(baseUrl.length() + 1);
+    }
+
+    @Nullable
+    private static String getUrl(@Nullable VirtualFile parent, String fileName) {
+        return parent != null ? parent.getUrl() + "/" + fileName : null;
+    }
+
+    /**
+     * (Re)starts the quiet period: pending changes are flushed once no new change has been made during that period.
+     */
+    private synchronized void schedulePendingChangesFlush() {
+        if (pendingChangesFuture != null) {
+            pendingChangesFuture.cancel(false);
+        }
+        int quietPeriod = Math.max(0, dssSettings.getPendingChangesQuietPeriodInMilliseconds());
+        pendingChangesFuture = executorService.schedule(this::flushPendingChanges, quietPeriod, MILLISECONDS);
+    }
+
+    private void flushPendingChanges() {
+        synchronized (this) {
+            pendingChangesFuture = null;
+        }
+        // Uploads run one after the other (so that consecutive changes reach DSS in order) on a background thread, and can be cancelled
+        // from the status bar.
+        uploadQueue.run(new Task.Backgroundable(null, "Saving to DSS", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                // Wait for a running synchronization to complete, it may already have handled some (or all) of the pending changes.
+                synchronizationLock.lock();
+                try {
+                    for (PendingChanges.Upload upload : pendingChanges.drainUploads()) {
+                        indicator.checkCanceled();
+                        try {
+                            upload.run(indicator);
+                        } catch (IOException e) {
+                            log.warn("Unable to save file onto the remote DSS instance.", e);
+                            synchronizationNotifier.notifyFailure(e, null);
+                        }
+                    }
+                    // Also includes the conflicts detected while uploading.
+                    indicator.checkCanceled();
+                    synchronize(pendingChanges.drainSynchronizeRequest());
+                } finally {
+                    synchronizationLock.unlock();
+                }
+            }
+        });
+    }
+
     private class SyncProjectManagerAdapter implements VetoableProjectManagerListener {
         @Override
         public void projectOpened(Project project) {
@@ -160,9 +348,8 @@ public class BackgroundSynchronizer implements ApplicationComponent {
             if (!dssSettings.isBackgroundSynchronizationEnabled()) {
                 return;
             }
-            if ((monitoredFilesIndex.getMonitoredPlugin(event.getFile()) != null) || (monitoredFilesIndex.getMonitoredLibrary(event.getFile()) != null)) {
-                scheduleSynchronization(NOW);
-            }
+            requestSynchronization(monitoredFilesIndex.getMonitoredPlugin(event.getFile()), event.getFile().getUrl());
+            requestSynchronization(monitoredFilesIndex.getMonitoredLibrary(event.getFile()), event.getFile().getUrl());
         }
 
         @Override
@@ -170,14 +357,8 @@ public class BackgroundSynchronizer implements ApplicationComponent {
             if (!dssSettings.isBackgroundSynchronizationEnabled()) {
                 return;
             }
-            if (monitoredFilesIndex.getMonitoredPlugin(event.getOriginalFile()) != null
-                    || monitoredFilesIndex.getMonitoredPlugin(event.getFile()) != null) {
-                scheduleSynchronization(NOW);
-            }
-            if (monitoredFilesIndex.getMonitoredLibrary(event.getOriginalFile()) != null
-                    || monitoredFilesIndex.getMonitoredLibrary(event.getFile()) != null) {
-                scheduleSynchronization(NOW);
-            }
+            requestSynchronization(monitoredFilesIndex.getMonitoredPlugin(event.getFile()), event.getFile().getUrl());
+            requestSynchronization(monitoredFilesIndex.getMonitoredLibrary(event.getFile()), event.getFile().getUrl());
         }
 
         @Override
@@ -198,9 +379,10 @@ public class BackgroundSynchronizer implements ApplicationComponent {
                         log.warn(String.format("Unable to update DSS metadata after removal of file system '%s'", deletedFileSystem.fsMetadata.id), e);
                     }
                 } else {
-                    if (monitoredFilesIndex.getMonitoredPlugin(file) != null || monitoredFilesIndex.getMonitoredLibrary(file) != null) {
+                    MonitoredFileSystem parentFileSystem = getMonitoredFileSystem(file);
+                    if (parentFileSystem != null) {
                         if (dssSettings.isBackgroundSynchronizationEnabled()) {
-                            scheduleSynchronization(NOW);
+                            requestSynchronization(parentFileSystem, getUrl(event.getParent(), event.getFileName()));
                         }
                     } else {
                         // We need to enumerate all plugins & recipes & libraries to see if they are nested under the deleted directory, and act upon.
@@ -240,10 +422,8 @@ public class BackgroundSynchronizer implements ApplicationComponent {
                     } catch (IOException e) {
                         log.warn(String.format("Unable to update DSS metadata after removal of file '%s'", file), e);
                     }
-                } else if (monitoredFilesIndex.getMonitoredPlugin(file) != null || monitoredFilesIndex.getMonitoredLibrary(file) != null) {
-                    if (dssSettings.isBackgroundSynchronizationEnabled()) {
-                        scheduleSynchronization(NOW);
-                    }
+                } else if (dssSettings.isBackgroundSynchronizationEnabled()) {
+                    requestSynchronization(getMonitoredFileSystem(file), getUrl(event.getParent(), event.getFileName()));
                 }
             }
         }
@@ -253,12 +433,10 @@ public class BackgroundSynchronizer implements ApplicationComponent {
             if (!dssSettings.isBackgroundSynchronizationEnabled()) {
                 return;
             }
-            if (monitoredFilesIndex.getMonitoredPlugin(event.getOldParent()) != null
-                    || monitoredFilesIndex.getMonitoredPlugin(event.getNewParent()) != null ||
-                    monitoredFilesIndex.getMonitoredLibrary(event.getOldParent()) != null
-                    || monitoredFilesIndex.getMonitoredLibrary(event.getNewParent()) != null            ) {
-                scheduleSynchronization(NOW);
-            }
+            MonitoredFileSystem oldFileSystem = getMonitoredFileSystem(event.getOldParent());
+            MonitoredFileSystem newFileSystem = getMonitoredFileSystem(event.getNewParent());
+            requestSynchronization(oldFileSystem, getUrl(event.getOldParent(), event.getFileName()));
+            requestSynchronization(newFileSystem, getUrl(event.getNewParent(), event.getFileName()));
         }
 
         @Override
@@ -283,13 +461,15 @@ public class BackgroundSynchronizer implements ApplicationComponent {
                     } else {
                         MonitoredPlugin monitoredPlugin = monitoredFilesIndex.getMonitoredPlugin(file);
                         MonitoredLibrary monitoredLibrary = monitoredFilesIndex.getMonitoredLibrary(file);
+                        String oldUrl = getUrl(file.getParent(), oldName);
                         if (monitoredPlugin != null) {
                             log.info(String.format("Detected rename operation on file '%s' located inside monitored plugin directory.", file.getCanonicalPath()));
-                            scheduleSynchronization(NOW);
+                            requestSynchronization(monitoredPlugin, oldUrl);
+                            requestSynchronization(monitoredPlugin, file.getUrl());
                         } else if (monitoredLibrary != null) {
                             log.info(String.format("Detected rename operation on file '%s' located inside monitored library directory.", file.getCanonicalPath()));
-                            scheduleSynchronization(NOW);
-
+                            requestSynchronization(monitoredLibrary, oldUrl);
+                            requestSynchronization(monitoredLibrary, file.getUrl());
                         }
                     }
                 }
@@ -301,109 +481,102 @@ public class BackgroundSynchronizer implements ApplicationComponent {
             if (!dssSettings.isBackgroundSynchronizationEnabled()) {
                 return;
             }
+            // Only read the saved content here, all network I/O is done in background.
             VirtualFile modifiedFile = event.getFile();
             MonitoredRecipeFile monitoredFile = monitoredFilesIndex.getMonitoredFile(modifiedFile);
             if (monitoredFile != null) {
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    log.info(String.format("Detected save operation on monitored file '%s'.", modifiedFile));
-                    syncModifiedRecipeFile(monitoredFile);
-                });
-            } else {
-                MonitoredPlugin monitoredPlugin = monitoredFilesIndex.getMonitoredPlugin(modifiedFile);
-                MonitoredLibrary monitoredLibrary = monitoredFilesIndex.getMonitoredLibrary((modifiedFile));
-                if (monitoredPlugin != null) {
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        log.info(String.format("Detected save operation on monitored file '%s'.", modifiedFile));
-                        syncModifiedLibraryOrPluginFile(monitoredPlugin, modifiedFile);
-                    });
+                log.info(String.format("Detected save operation on monitored file '%s'.", modifiedFile));
+                try {
+                    String fileContent = VirtualFileManager.readVirtualFile(modifiedFile);
+                    requestUpload(modifiedFile.getPath(), indicator -> syncModifiedRecipeFile(monitoredFile, fileContent, indicator));
+                } catch (IOException e) {
+                    log.warn(String.format("Unable to read recipe file '%s'.", modifiedFile), e);
                 }
-                if (monitoredLibrary != null) {
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        log.info(String.format("Detected save operation on monitored file '%s'.", modifiedFile));
-                        syncModifiedLibraryOrPluginFile(monitoredLibrary, modifiedFile);
-                    });
+            } else {
+                MonitoredFileSystem monitoredFS = getMonitoredFileSystem(modifiedFile);
+                if (monitoredFS != null) {
+                    log.info(String.format("Detected save operation on monitored file '%s'.", modifiedFile));
+                    String path = VirtualFileManager.getRelativePath(monitoredFS.baseDir, modifiedFile);
+                    try {
+                        byte[] fileContent = VirtualFileManager.readVirtualFileAsByteArray(modifiedFile);
+                        requestUpload(modifiedFile.getPath(), indicator -> syncModifiedLibraryOrPluginFile(monitoredFS, path, fileContent, indicator));
+                    } catch (IOException e) {
+                        log.warn(String.format("Unable to read file '%s'.", modifiedFile), e);
+                    }
                 }
-
             }
         }
 
-        private void syncModifiedLibraryOrPluginFile(MonitoredFileSystem monitoredFS, VirtualFile modifiedFile) {
-            String path = VirtualFileManager.getRelativePath(monitoredFS.baseDir, modifiedFile);
+        private void syncModifiedLibraryOrPluginFile(MonitoredFileSystem monitoredFS, String path, byte[] fileContent, ProgressIndicator indicator) throws IOException {
             DssFileMetadata trackedFile = monitoredFS.findFile(path);
-            try {
-                byte[] fileContent = ReadAction.compute(() -> VirtualFileManager.readVirtualFileAsByteArray(modifiedFile));
-                if (trackedFile == null) {
-                    // New file, send it to DSS
-                    if (monitoredFS instanceof MonitoredPlugin) {
-                        savePluginFileToDss(dssSettings, (MonitoredPlugin) monitoredFS, path, fileContent, true);
-                    } else {
-                        saveLibraryFileToDss(dssSettings, (MonitoredLibrary) monitoredFS, path, fileContent, true);
-                    }
+            if (trackedFile == null) {
+                // New file, send it to DSS
+                indicator.checkCanceled();
+                if (monitoredFS instanceof MonitoredPlugin) {
+                    savePluginFileToDss(dssSettings, (MonitoredPlugin) monitoredFS, path, fileContent, true);
+                } else {
+                    saveLibraryFileToDss(dssSettings, (MonitoredLibrary) monitoredFS, path, fileContent, true);
+                }
 
-                } else if (getContentHash(fileContent) != trackedFile.contentHash) {
-                    DssInstance dssInstance = dssSettings.getDssInstanceMandatory(monitoredFS.fsMetadata.instance);
-                    DSSClient dssClient = dssInstance.createClient();
+            } else if (getContentHash(fileContent) != trackedFile.contentHash) {
+                DssInstance dssInstance = dssSettings.getDssInstanceMandatory(monitoredFS.fsMetadata.instance);
+                DSSClient dssClient = dssInstance.createClient();
 
-                    byte[] remoteData;
-                    if (monitoredFS instanceof MonitoredPlugin) {
-                        if(Strings.isNullOrEmpty(monitoredFS.fsMetadata.id)) {
-                            monitoredFS.fsMetadata.id = ((MonitoredPlugin) monitoredFS).plugin.pluginId;
-                        }
-                        remoteData = dssClient.downloadPluginFile(monitoredFS.fsMetadata.id, trackedFile.remotePath);
-                    } else {
-                        String remoteDataString = dssClient.downloadLibraryFile(monitoredFS.fsMetadata.id, trackedFile.remotePath).data;
-                        // Converting back to bytes to factorize code with plugin
-                        if (Strings.isNullOrEmpty(remoteDataString)) {
-                            remoteData = new byte[0];
-                        } else {
-                            remoteData = remoteDataString.getBytes(UTF_8);
-                        }
+                // Only the hash of the remote file is needed, it is computed while the file is downloaded.
+                long remoteHash;
+                indicator.checkCanceled();
+                if (monitoredFS instanceof MonitoredPlugin) {
+                    if(Strings.isNullOrEmpty(monitoredFS.fsMetadata.id)) {
+                        monitoredFS.fsMetadata.id = ((MonitoredPlugin) monitoredFS).plugin.pluginId;
                     }
+                    remoteHash = dssClient.downloadPluginFile(monitoredFS.fsMetadata.id, trackedFile.remotePath, VirtualFileManager::getContentHash);
+                } else {
+                    remoteHash = dssClient.downloadLibraryFile(monitoredFS.fsMetadata.id, trackedFile.remotePath, VirtualFileManager::getContentHash);
+                }
 
-                    int remoteHash = getContentHash(remoteData);
-                    if (trackedFile.contentHash == remoteHash) {
-                        log.info(String.format("File '%s' has been locally modified. Saving it onto the remote DSS instance", path));
-                        if (monitoredFS instanceof MonitoredPlugin) {
-                            savePluginFileToDss(dssSettings, (MonitoredPlugin) monitoredFS, path, fileContent, true);
-                        } else {
-                            saveLibraryFileToDss(dssSettings, (MonitoredLibrary) monitoredFS, path, fileContent, true);
-                        }
+                if (trackedFile.contentHash == remoteHash) {
+                    log.info(String.format("File '%s' has been locally modified. Saving it onto the remote DSS instance", path));
+                    indicator.checkCanceled();
+                    if (monitoredFS instanceof MonitoredPlugin) {
+                        savePluginFileToDss(dssSettings, (MonitoredPlugin) monitoredFS, path, fileContent, true);
                     } else {
-                        // Conflict detected, run a global synchronization to correctly handle this corner-case.
-                        scheduleSynchronization(NOW);
+                        saveLibraryFileToDss(dssSettings, (MonitoredLibrary) monitoredFS, path, fileContent, true);
                     }
+                } else {
+                    // Conflict detected, run a synchronization to correctly handle this corner-case.
+                    requestSynchronization(monitoredFS, monitoredFS.baseDir.getUrl() + "/" + path);
                 }
-            } catch (IOException e) {
-                log.warn(String.format("Unable to synchronize plugin file '%s'.", path), e);
             }
         }
 
-        private void syncModifiedRecipeFile(MonitoredRecipeFile monitoredFile) {
-            try {
-                String fileContent = ReadAction.compute(() -> VirtualFileManager.readVirtualFile(monitoredFile.file));
-                if (getContentHash(fileContent) != monitoredFile.recipe.contentHash) {
-                    DSSClient dssClient = dssSettings.getDssClient(monitoredFile.recipe.instance);
-                    RecipeAndPayload remoteRecipe = dssClient.loadRecipe(monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName);
-                    if (remoteRecipe != null) {
-                        long remoteVersion = remoteRecipe.recipe.versionTag.versionNumber;
-                        long localVersion = monitoredFile.recipe.versionNumber;
-                        if (remoteVersion == localVersion) {
-                            log.info(String.format("Recipe '%s' has been locally modified. Saving it onto the remote DSS instance", monitoredFile.recipe));
-                            saveRecipeToDss(dssClient, monitoredFile, fileContent, true);
-                        } else {
-                            // Conflict detected, run a global synchronization to correctly handle this corner-case.
-                            scheduleSynchronization(NOW);
-                        }
+        private void syncModifiedRecipeFile(MonitoredRecipeFile monitoredFile, String fileContent, ProgressIndicator indicator) throws IOException {
+            if (getContentHash(fileContent) != monitoredFile.recipe.contentHash) {
+                DSSClient dssClient = dssSettings.getDssClient(monitoredFile.recipe.instance);
+                indicator.checkCanceled();
+                RecipeAndPayload remoteRecipe = dssClient.loadRecipe(monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName);
+                if (remoteRecipe != null) {
+                    long remoteVersion = remoteRecipe.recipe.versionTag.versionNumber;
+                    long localVersion = monitoredFile.recipe.versionNumber;
+                    if (remoteVersion == localVersion) {
+                        log.info(String.format("Recipe '%s' has been locally modified. Saving it onto the remote DSS instance", monitoredFile.recipe));
+                        indicator.checkCanceled();
+                        saveRecipeToDss(dssClient, monitoredFile, fileContent, true, remoteRecipe);
                     } else {
-                        // Conflict detected, run a global synchronization to correctly handle this corner-case.
-                        scheduleSynchronization(NOW);
+                        // Conflict detected, run a synchronization to correctly handle this corner-case.
+                        requestSynchronization(monitoredFile);
                     }
+                } else {
+                    // Conflict detected, run a synchronization to correctly handle this corner-case.
+                    requestSynchronization(monitoredFile);
                 }
-            } catch (IOException e) {
-                log.warn(String.format("Unable to synchronize recipe '%s'.", monitoredFile.recipe), e);
             }
         }
 
+        private MonitoredFileSystem getMonitoredFileSystem(VirtualFile file) {
+            MonitoredPlugin monitoredPlugin = monitoredFilesIndex.getMonitoredPlugin(file);
+            return monitoredPlugin != null ? monitoredPlugin : monitoredFilesIndex.getMonitoredLibrary(file);
+        }
+
         private void syncRenamedRecipeFile(MonitoredRecipeFile monitoredFile, VirtualFile newFile) {
             try {
                 String fileContent = ReadAction.compute(() -> VirtualFileManager.readVirtualFile(monitoredFile.file));
@@ -418,6 +591,13 @@ public class BackgroundSynchronizer implements ApplicationComponent {
 
     }
 
+    private class IdeActivationListener implements ApplicationActivationListener {
+        @Override
+        public void applicationActivated(@NotNull IdeFrame ideFrame) {
+            resumePolling();
+        }
+    }
+
     private class DssSettingsListener implements DssSettings.Listener {
         @Override
         public void onConfigurationUpdated() {
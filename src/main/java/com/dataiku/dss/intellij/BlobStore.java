@@ -0,0 +1,163 @@
+package com.dataiku.dss.intellij;
+
+import com.dataiku.dss.Logger;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed store for the data-blobs of a metadata file. Each blob is named after the SHA-256 of its (uncompressed) content, so
+ * identical contents share the same blob and storing a content that is already present is a no-op.
+ * <p>
+ * The blobs directory is listed only once, the first time unused blobs are garbage-collected. Afterwards, the set of stored blobs is kept
+ * up-to-date in memory.
+ * <p>
+ * Files are stored before the metadata entry referencing them is added, so they are kept by the garbage collection until they are seen
+ * referenced by a written metadata file.
+ */
+class BlobStore {
+    private static final Logger log = Logger.getInstance(BlobStore.class);
+    private static final Pattern BLOB_NAME_PATTERN = Pattern.compile("^[a-f0-9]{64}$");
+    private static final Pattern LEGACY_BLOB_NAME_PATTERN = Pattern.compile("^[a-f0-9]{32}$"); // Random UUIDs, used by previous versions
+
+    private final File blobsDir;
+    private Set<String> storedBlobIds; // null until the blobs directory has been listed
+    private final Set<String> pendingBlobIds = new HashSet<>(); // Stored files not referenced by the written metadata file yet
+
+    BlobStore(File blobsDir) {
+        this.blobsDir = blobsDir;
+    }
+
+    static boolean isLegacyBlobId(String blobId) {
+        return LEGACY_BLOB_NAME_PATTERN.matcher(blobId).matches();
+    }
+
+    synchronized String write(byte[] data) throws IOException {
+        String blobId = Hashing.sha256().hashBytes(data).toString();
+        File file = new File(blobsDir, blobId);
+        if ((storedBlobIds != null && storedBlobIds.contains(blobId)) || file.exists()) {
+            return blobId;
+        }
+        if (!blobsDir.exists()) {
+            if (!blobsDir.mkdirs()) {
+                throw new IOException("Unable to create directory " + blobsDir.getPath());
+            }
+        }
+        // Write in a temporary file first, so that a blob is never partially written.
+        File tempFile = File.createTempFile("blob", ".tmp", blobsDir);
+        try {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+                out.write(data);
+                out.flush();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                log.info("Unable to delete temporary blob file: " + tempFile);
+            }
+        }
+        if (storedBlobIds != null) {
+            storedBlobIds.add(blobId);
+        }
+        return blobId;
+    }
+
+    /**
+     * Stores the content of the given file. The file is compressed (and hashed) in a temporary file first, so that several files can be
+     * stored concurrently.
+     */
+    String write(File source) throws IOException {
+        if (!blobsDir.exists()) {
+            if (!blobsDir.mkdirs() && !blobsDir.isDirectory()) {
+                throw new IOException("Unable to create directory " + blobsDir.getPath());
+            }
+        }
+        File tempFile = File.createTempFile("blob", ".tmp", blobsDir);
+        try {
+            String blobId;
+            try (HashingInputStream in = new HashingInputStream(Hashing.sha256(), new FileInputStream(source));
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+                ByteStreams.copy(in, out);
+                blobId = in.hash().toString();
+            }
+            synchronized (this) {
+                pendingBlobIds.add(blobId);
+                File file = new File(blobsDir, blobId);
+                if ((storedBlobIds == null || !storedBlobIds.contains(blobId)) && !file.exists()) {
+                    try {
+                        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    if (storedBlobIds != null) {
+                        storedBlobIds.add(blobId);
+                    }
+                }
+            }
+            return blobId;
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                log.info("Unable to delete temporary blob file: " + tempFile);
+            }
+        }
+    }
+
+    byte[] read(String blobId) throws IOException {
+        File blobIdFile = new File(blobsDir, blobId);
+        if (blobIdFile.exists()) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(blobIdFile))) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes all the stored blobs that are not part of the given set, except the stored files that have never been referenced yet.
+     *
+     * @param referencedBlobIds the blobs referenced by the metadata file that has just been written.
+     */
+    synchronized void retainOnly(Set<String> referencedBlobIds) {
+        pendingBlobIds.removeAll(referencedBlobIds);
+        if (storedBlobIds == null) {
+            storedBlobIds = listStoredBlobIds();
+        }
+        Iterator<String> iterator = storedBlobIds.iterator();
+        while (iterator.hasNext()) {
+            String blobId = iterator.next();
+            if (!referencedBlobIds.contains(blobId) && !pendingBlobIds.contains(blobId)) {
+                File file = new File(blobsDir, blobId);
+                if (file.delete() || !file.exists()) {
+                    iterator.remove();
+                } else {
+                    log.info("Unable to delete unused blob file: " + file);
+                }
+            }
+        }
+    }
+
+    private Set<String> listStoredBlobIds() {
+        Set<String> result = new HashSet<>();
+        String[] names = blobsDir.list((dir, name) -> BLOB_NAME_PATTERN.matcher(name).matches() || isLegacyBlobId(name));
+        if (names != null) {
+            Collections.addAll(result, names);
+        }
+        return result;
+    }
+}
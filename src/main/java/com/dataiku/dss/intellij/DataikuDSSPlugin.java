@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 
 import com.dataiku.dss.intellij.config.DssSettings;
 import com.dataiku.dss.intellij.utils.ComponentUtils;
+import com.dataiku.dss.metrics.DssMetrics;
 import com.dataiku.dss.wt1.WT1;
 import com.intellij.openapi.components.ApplicationComponent;
 
@@ -29,5 +30,11 @@ public class DataikuDSSPlugin implements ApplicationComponent {
             WT1 wt1 = WT1.getInstance();
             wt1.track("pycharm-start");
         }
+        DssMetrics.registerMBean();
+    }
+
+    @Override
+    public void disposeComponent() {
+        DssMetrics.unregisterMBean();
     }
 }
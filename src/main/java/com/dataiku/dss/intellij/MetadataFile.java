@@ -1,33 +1,53 @@
 package com.dataiku.dss.intellij;
 
 import com.dataiku.dss.Logger;
+import com.dataiku.dss.intellij.utils.VirtualFileManager;
 import com.dataiku.dss.model.metadata.*;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
-import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Charsets.UTF_8;
 
 public class MetadataFile {
     private static final Logger log = Logger.getInstance(MetadataFile.class);
-    private static final Pattern BLOB_NAME_PATTERN = Pattern.compile("^[a-f0-9]{32}$");
+    static final int CURRENT_VERSION = 2; // 2: 64-bit content hashes instead of Adler-32
     private static final String BLOBS_DIRECTORY = "blobs";
+    private static final long WRITE_DELAY_MILLIS = 1000; // Mutations made within this window are written to disk at once
+    private static final long WRITE_RETRY_DELAY_MILLIS = 10_000; // A failed write is retried after this delay, until it succeeds
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("DSS metadata writer").setDaemon(true).build());
 
     public final File metadataFile;
     public final DssMetadata metadata;
+    private final BlobStore blobStore;
+    private boolean legacyBlobsMigrated = false;
+    private ScheduledFuture<?> pendingWrite = null; // null if metadata.json is up-to-date
 
     MetadataFile(VirtualFile moduleContentRoot, DssMetadata metadata) {
+        this(new File(moduleContentRoot.getCanonicalPath()), metadata);
+    }
+
+    @VisibleForTesting
+    MetadataFile(File moduleContentRoot, DssMetadata metadata) {
         this.metadata = metadata;
-        this.metadataFile = new File(new File(moduleContentRoot.getCanonicalPath(), ".dataiku"), "metadata.json");
+        this.metadataFile = new File(new File(moduleContentRoot, ".dataiku"), "metadata.json");
+        this.blobStore = new BlobStore(new File(metadataFile.getParentFile(), BLOBS_DIRECTORY));
     }
 
     public synchronized void addOrUpdateRecipe(DssRecipeMetadata fileMetadata) throws IOException {
@@ -109,8 +129,7 @@ public class MetadataFile {
             throw new IllegalArgumentException("Untracked plugin: " + fileMetadata.pluginId);
         }
 
-        pluginMetadata.files.removeIf(f -> f.path.equals(fileMetadata.path));
-        pluginMetadata.files.add(fileMetadata);
+        pluginMetadata.addOrUpdateFile(fileMetadata);
 
         // Write the file back
         if (flush) {
@@ -127,8 +146,7 @@ public class MetadataFile {
             throw new IllegalArgumentException("Untracked project library: " + fileMetadata.projectKey);
         }
 
-        libMetadata.files.removeIf(f -> f.path.equals(fileMetadata.path));
-        libMetadata.files.add(fileMetadata);
+        libMetadata.addOrUpdateFile(fileMetadata);
 
         // Write the file back
         if (flush) {
@@ -141,7 +159,7 @@ public class MetadataFile {
 
         DssPluginMetadata pluginMetadata = metadata.getPluginById(fileMetadata.pluginId);
         if (pluginMetadata != null) {
-            pluginMetadata.files.removeIf(f -> f.path.equals(fileMetadata.path));
+            pluginMetadata.removeFile(fileMetadata.remotePath);
 
             // Write the file back
             if (flush) {
@@ -150,8 +168,107 @@ public class MetadataFile {
         }
     }
 
-    public void flush() throws IOException {
-        writeMetadata();
+    /**
+     * Indexes the files of the plugins & libraries just read from disk, before they can be seen by other threads.
+     */
+    synchronized void indexFiles() {
+        for (DssPluginMetadata plugin : metadata.plugins) {
+            plugin.indexFiles();
+        }
+        for (DssLibraryMetadata library : metadata.libraries) {
+            library.indexFiles();
+        }
+    }
+
+    /**
+     * Upgrades metadata written by previous versions of the plugin. Content hashes are computed again from the data-blob of each item
+     * (its content when last synchronized), so that items are not seen as modified because the hash function changed.
+     */
+    synchronized void upgrade() throws IOException {
+        if (metadata.version >= CURRENT_VERSION) {
+            return;
+        }
+        log.info(String.format("Upgrading DSS metadata file '%s' from version %d", metadataFile, metadata.version));
+        for (DssRecipeMetadata recipe : metadata.recipes) {
+            recipe.contentHash = rehash(recipe.contentHash, recipe.data, recipe.dataBlobId);
+        }
+        for (DssPluginMetadata plugin : metadata.plugins) {
+            for (DssFileMetadata file : plugin.files) {
+                file.contentHash = rehash(file.contentHash, file.data, file.dataBlobId);
+            }
+        }
+        for (DssLibraryMetadata library : metadata.libraries) {
+            for (DssFileMetadata file : library.files) {
+                file.contentHash = rehash(file.contentHash, file.data, file.dataBlobId);
+            }
+        }
+        metadata.version = CURRENT_VERSION;
+        flush();
+    }
+
+    private long rehash(long contentHash, byte[] data, String dataBlobId) throws IOException {
+        if (data == null && dataBlobId != null) {
+            data = blobStore.read(dataBlobId);
+        }
+        if (data == null) {
+            // Folders have no content (and a zero hash). Files without data-blob will be seen as modified on next synchronization.
+            return contentHash == 0 ? 0 : -1;
+        }
+        return VirtualFileManager.getContentHash(data);
+    }
+
+    /**
+     * Saves the data-blobs of the updated items and schedules the write of the metadata file, so that several mutations made in a short
+     * period of time are written to disk at once.
+     */
+    public synchronized void flush() throws IOException {
+        // Blobs are written right away, so that the blob of each item can be read back as soon as it has been flushed.
+        flushBlobs();
+        if (pendingWrite == null) {
+            pendingWrite = writer.schedule(this::writePendingMetadata, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the data-blobs of the updated items and writes the metadata file immediately.
+     */
+    public synchronized void flushNow() throws IOException {
+        try {
+            flushBlobs();
+            writeMetadata();
+        } catch (IOException | RuntimeException e) {
+            // Keep (or schedule) a pending write, so that the metadata file does not stay stale if nothing else changes.
+            if (pendingWrite == null) {
+                pendingWrite = writer.schedule(this::writePendingMetadata, WRITE_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            throw e;
+        }
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+            pendingWrite = null;
+        }
+    }
+
+    /**
+     * Writes the metadata file if a write is pending.
+     */
+    public synchronized void flushPendingWrite() throws IOException {
+        if (pendingWrite != null) {
+            flushNow();
+        }
+    }
+
+    private synchronized void writePendingMetadata() {
+        if (pendingWrite != null) {
+            try {
+                flushBlobs(); // Only needed after a failed flushNow(), blobs being otherwise written when mutations are flushed
+                writeMetadata();
+                pendingWrite = null;
+            } catch (IOException | RuntimeException e) {
+                log.warn(String.format("Unable to write DSS metadata file '%s', retrying in %d ms", metadataFile, WRITE_RETRY_DELAY_MILLIS), e);
+                pendingWrite = writer.schedule(this::writePendingMetadata, WRITE_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     private void writeMetadata() throws IOException {
@@ -162,42 +279,59 @@ public class MetadataFile {
             }
         }
 
-        // Save all new data-blobs
-        flushBlobs();
-
-        // Save the main file
-        Files.write(toJson(metadata).getBytes(UTF_8), metadataFile);
+        // Save the main file: stream it into a temporary file, then replace the previous version at once, so that it is never left
+        // partially written.
+        File tempFile = new File(parentFile, metadataFile.getName() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8))) {
+            GSON.toJson(metadata, out);
+        }
+        try {
+            Files.move(tempFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
 
         // Delete all unused blob files
-        cleanUpBlobs(listBlobIds());
+        blobStore.retainOnly(listBlobIds());
     }
 
     private void flushBlobs() throws IOException {
+        // Blobs written by previous versions are named after random UUIDs, rewrite them once in the content-addressed store.
+        boolean migrateLegacyBlobs = !legacyBlobsMigrated;
         for (DssRecipeMetadata recipe : metadata.recipes) {
             if (recipe.data != null) {
                 recipe.dataBlobId = writeDataBlob(recipe.data);
                 recipe.data = null;
+            } else if (migrateLegacyBlobs) {
+                recipe.dataBlobId = migrateLegacyBlob(recipe.dataBlobId);
             }
         }
         for (DssPluginMetadata plugin : metadata.plugins) {
-            List<DssFileMetadata> files = plugin.files;
-            for (DssFileMetadata file : files) {
-                if (file.data != null) {
-                    file.dataBlobId = writeDataBlob(file.data);
-                    file.data = null;
-                }
-            }
+            flushBlobs(plugin.files, migrateLegacyBlobs);
         }
         for (DssLibraryMetadata library : metadata.libraries) {
-            List<DssFileMetadata> files = library.files;
-            for (DssFileMetadata file : files) {
-                if (file.data != null) {
-                    file.dataBlobId = writeDataBlob(file.data);
-                    file.data = null;
-                }
+            flushBlobs(library.files, migrateLegacyBlobs);
+        }
+        legacyBlobsMigrated = true;
+    }
+
+    private void flushBlobs(List<DssFileMetadata> files, boolean migrateLegacyBlobs) throws IOException {
+        for (DssFileMetadata file : files) {
+            if (file.data != null) {
+                file.dataBlobId = writeDataBlob(file.data);
+                file.data = null;
+            } else if (migrateLegacyBlobs) {
+                file.dataBlobId = migrateLegacyBlob(file.dataBlobId);
             }
         }
+    }
 
+    private String migrateLegacyBlob(String blobId) throws IOException {
+        if (blobId == null || !BlobStore.isLegacyBlobId(blobId)) {
+            return blobId;
+        }
+        byte[] data = blobStore.read(blobId);
+        return data != null ? blobStore.write(data) : blobId;
     }
 
     @NotNull
@@ -229,46 +363,16 @@ public class MetadataFile {
         return referencedBlobIds;
     }
 
-    private void cleanUpBlobs(Set<String> referencedBlobIds) {
-        File blobsDir = new File(metadataFile.getParentFile(), BLOBS_DIRECTORY);
-        File[] files = blobsDir.listFiles((dir, name) -> BLOB_NAME_PATTERN.matcher(name).matches() && !referencedBlobIds.contains(name));
-        if (files != null) {
-            for (File file : files) {
-                if (!file.delete()) {
-                    log.info("Unable to delete unused blob file: " + file);
-                }
-            }
-        }
-    }
-
     public String writeDataBlob(byte[] data) throws IOException {
-        File blobsDir = new File(metadataFile.getParentFile(), BLOBS_DIRECTORY);
-        if (!blobsDir.exists()) {
-            if (!blobsDir.mkdirs()) {
-                throw new IOException("Unable to create directory " + blobsDir.getPath());
-            }
-        }
-        String blobId = UUID.randomUUID().toString().replaceAll("-", "");
-        File file = new File(blobsDir, blobId);
-        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
-            out.write(data);
-            out.flush();
-        }
-        return blobId;
+        return blobStore.write(data);
     }
 
-    public byte[] readDataBlob(String blobId) throws IOException {
-        File blobIdFile = new File(new File(metadataFile.getParentFile(), BLOBS_DIRECTORY), blobId);
-        if (blobIdFile.exists()) {
-            try (InputStream in = new GZIPInputStream(new FileInputStream(blobIdFile))) {
-                return ByteStreams.toByteArray(in);
-            }
-        }
-        return null;
+    public String writeDataBlob(File file) throws IOException {
+        return blobStore.write(file);
     }
 
-    private static String toJson(Object obj) {
-        return new GsonBuilder().setPrettyPrinting().create().toJson(obj);
+    public byte[] readDataBlob(String blobId) throws IOException {
+        return blobStore.read(blobId);
     }
 
     @Override
@@ -34,7 +34,14 @@ public class MetadataFilesIndex implements ApplicationComponent {
     }
 
     @Override
-    public void disposeComponent() {
+    public synchronized void disposeComponent() {
+        for (MetadataFile metadataFile : metadataFiles.values()) {
+            try {
+                metadataFile.flushPendingWrite();
+            } catch (IOException e) {
+                log.warn(String.format("Unable to write DSS metadata file '%s'", metadataFile.metadataFile), e);
+            }
+        }
         metadataFiles.clear();
     }
 
@@ -54,16 +61,19 @@ public class MetadataFilesIndex implements ApplicationComponent {
                 DssMetadata dssMetadata = readMetadata(moduleContentRoot);
                 if (dssMetadata != null) {
                     dssMetadataFile = new MetadataFile(moduleContentRoot, dssMetadata);
+                    dssMetadataFile.indexFiles();
+                    dssMetadataFile.upgrade();
                     metadataFiles.put(key, dssMetadataFile);
                 } else if (createIfNeeded) {
                     // Create metadata file
                     dssMetadata = new DssMetadata();
-                    dssMetadata.version = 1;
+                    dssMetadata.version = MetadataFile.CURRENT_VERSION;
                     dssMetadata.recipes = new ArrayList<>();
                     dssMetadata.plugins = new ArrayList<>();
                     dssMetadata.libraries = new ArrayList<>();
                     dssMetadataFile = new MetadataFile(moduleContentRoot, dssMetadata);
-                    dssMetadataFile.flush();
+                    dssMetadataFile.flushNow();
+                    metadataFiles.put(key, dssMetadataFile);
                 }
             } catch (IOException e) {
                 log.warn(String.format("Unable to read DSS metadata file for module '%s'", moduleContentRoot));
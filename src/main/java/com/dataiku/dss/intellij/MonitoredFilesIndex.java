@@ -2,7 +2,7 @@ package com.dataiku.dss.intellij;
 
 import com.dataiku.dss.Logger;
 import com.dataiku.dss.intellij.utils.ComponentUtils;
-import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.model.PathMaps;
 import com.dataiku.dss.model.metadata.DssLibraryMetadata;
 import com.dataiku.dss.model.metadata.DssPluginMetadata;
 import com.dataiku.dss.model.metadata.DssRecipeMetadata;
@@ -15,16 +15,21 @@ import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class MonitoredFilesIndex implements ApplicationComponent {
     private static final Logger log = Logger.getInstance(MonitoredFilesIndex.class);
 
-    private final Map<String/*Path of file*/, MonitoredRecipeFile> monitoredRecipeFiles = new HashMap<>();
-    private final Map<String/*Path of plugin base directory*/, MonitoredPlugin> monitoredPlugins = new HashMap<>();
-    private final Map<String/*Path of library base directory*/, MonitoredLibrary> monitoredLibraries = new HashMap<>();
+    // Indexes are copied on each update and never modified afterwards, so that the lookups done on every VFS event never wait for a lock.
+    private volatile Map<String/*Canonical path of file*/, MonitoredRecipeFile> monitoredRecipeFiles = Collections.emptyMap();
+    private volatile NavigableMap<String/*URL of file*/, MonitoredRecipeFile> monitoredRecipeFilesByUrl = Collections.emptyNavigableMap();
+    private volatile NavigableMap<String/*URL of plugin base directory*/, MonitoredPlugin> monitoredPlugins = Collections.emptyNavigableMap();
+    private volatile NavigableMap<String/*URL of library base directory*/, MonitoredLibrary> monitoredLibraries = Collections.emptyNavigableMap();
     private MetadataFilesIndex metadataFilesIndex;
 
     public static MonitoredFilesIndex getInstance() {
@@ -45,10 +50,11 @@ public class MonitoredFilesIndex implements ApplicationComponent {
     }
 
     @Override
-    public void disposeComponent() {
-        monitoredRecipeFiles.clear();
-        monitoredPlugins.clear();
-        monitoredLibraries.clear();
+    public synchronized void disposeComponent() {
+        monitoredRecipeFiles = Collections.emptyMap();
+        monitoredRecipeFilesByUrl = Collections.emptyNavigableMap();
+        monitoredPlugins = Collections.emptyNavigableMap();
+        monitoredLibraries = Collections.emptyNavigableMap();
     }
 
     public synchronized void index(VirtualFile monitoredFile, MetadataFile metadataFile, DssRecipeMetadata recipe) {
@@ -61,59 +67,69 @@ public class MonitoredFilesIndex implements ApplicationComponent {
     public synchronized void index(MonitoredRecipeFile monitoredFile) {
         Preconditions.checkNotNull(monitoredFile, "monitoredFile");
         log.info(String.format("Start tracking file '%s' corresponding to recipe '%s'.", monitoredFile.file, monitoredFile.recipe));
-        monitoredRecipeFiles.put(monitoredFile.file.getCanonicalPath(), monitoredFile);
+        Map<String, MonitoredRecipeFile> newRecipeFiles = new HashMap<>(monitoredRecipeFiles);
+        newRecipeFiles.put(monitoredFile.file.getCanonicalPath(), monitoredFile);
+        NavigableMap<String, MonitoredRecipeFile> newRecipeFilesByUrl = new TreeMap<>(monitoredRecipeFilesByUrl);
+        newRecipeFilesByUrl.put(monitoredFile.file.getUrl(), monitoredFile);
+        monitoredRecipeFiles = Collections.unmodifiableMap(newRecipeFiles);
+        monitoredRecipeFilesByUrl = Collections.unmodifiableNavigableMap(newRecipeFilesByUrl);
     }
 
     public synchronized void index(MonitoredFileSystem monitoredFS) {
         Preconditions.checkNotNull(monitoredFS, "monitoredFS");
         log.info(String.format("Start tracking directory '%s' corresponding to element '%s'.", monitoredFS.baseDir, monitoredFS.fsMetadata.id));
         if (monitoredFS instanceof MonitoredPlugin) {
-            monitoredPlugins.put(monitoredFS.baseDir.getCanonicalPath(), (MonitoredPlugin) monitoredFS);
+            monitoredPlugins = copyWith(monitoredPlugins, monitoredFS.baseDir.getUrl(), (MonitoredPlugin) monitoredFS);
         } else {
-            monitoredLibraries.put(monitoredFS.baseDir.getCanonicalPath(), (MonitoredLibrary) monitoredFS);
+            monitoredLibraries = copyWith(monitoredLibraries, monitoredFS.baseDir.getUrl(), (MonitoredLibrary) monitoredFS);
         }
-
     }
 
     public synchronized void removeFromIndex(MonitoredRecipeFile monitoredFile) {
         Preconditions.checkNotNull(monitoredFile, "monitoredFile");
         log.info(String.format("Stop tracking file '%s' corresponding to recipe '%s'.", monitoredFile.file, monitoredFile.recipe));
-        monitoredRecipeFiles.remove(monitoredFile.file.getCanonicalPath());
+        // Remove by value, the file may have been renamed since it has been indexed.
+        Map<String, MonitoredRecipeFile> newRecipeFiles = new HashMap<>(monitoredRecipeFiles);
+        newRecipeFiles.values().removeIf(recipeFile -> recipeFile == monitoredFile);
+        NavigableMap<String, MonitoredRecipeFile> newRecipeFilesByUrl = new TreeMap<>(monitoredRecipeFilesByUrl);
+        newRecipeFilesByUrl.values().removeIf(recipeFile -> recipeFile == monitoredFile);
+        monitoredRecipeFiles = Collections.unmodifiableMap(newRecipeFiles);
+        monitoredRecipeFilesByUrl = Collections.unmodifiableNavigableMap(newRecipeFilesByUrl);
     }
 
     public synchronized void removeFromIndex(MonitoredFileSystem monitoredFS) {
         Preconditions.checkNotNull(monitoredFS, "monitoredFS");
         log.info(String.format("Stop tracking directory '%s' on instance '%s'.", monitoredFS.baseDir, monitoredFS.fsMetadata.instance));
         if (monitoredFS instanceof MonitoredPlugin) {
-            monitoredPlugins.remove(monitoredFS.baseDir.getCanonicalPath());
+            monitoredPlugins = copyWithout(monitoredPlugins, monitoredFS.baseDir.getUrl());
         } else {
-            monitoredLibraries.remove(monitoredFS.baseDir.getCanonicalPath());
+            monitoredLibraries = copyWithout(monitoredLibraries, monitoredFS.baseDir.getUrl());
         }
     }
 
-    public synchronized MonitoredRecipeFile getMonitoredFile(VirtualFile file) {
+    public MonitoredRecipeFile getMonitoredFile(VirtualFile file) {
         if (file == null) {
             return null;
         }
         return monitoredRecipeFiles.get(file.getCanonicalPath());
     }
 
-    public synchronized MonitoredRecipeFile getMonitoredFile(String path) {
+    public MonitoredRecipeFile getMonitoredFile(String path) {
         if (path == null) {
             return null;
         }
         return monitoredRecipeFiles.get(path);
     }
 
-    public synchronized List<MonitoredRecipeFile> getMonitoredRecipeFiles() {
+    public List<MonitoredRecipeFile> getMonitoredRecipeFiles() {
         return new ArrayList<>(monitoredRecipeFiles.values());
     }
 
-    public synchronized List<MonitoredPlugin> getMonitoredPlugins() {
+    public List<MonitoredPlugin> getMonitoredPlugins() {
         return new ArrayList<>(monitoredPlugins.values());
     }
 
-    public synchronized List<MonitoredLibrary> getMonitoredLibraries() {
+    public List<MonitoredLibrary> getMonitoredLibraries() {
         return new ArrayList<>(monitoredLibraries.values());
     }
 
@@ -147,38 +163,18 @@ public class MonitoredFilesIndex implements ApplicationComponent {
         }
     }
 
-    public synchronized MonitoredLibrary getMonitoredLibrary(VirtualFile file) {
-        for (MonitoredLibrary lib : monitoredLibraries.values()) {
-            String path = VirtualFileManager.getRelativePath(lib.baseDir, file);
-            if (path != null) {
-                return lib;
-            }
-        }
-        return null;
+    public MonitoredLibrary getMonitoredLibrary(VirtualFile file) {
+        return findEnclosing(monitoredLibraries, file);
     }
 
-    public synchronized MonitoredPlugin getMonitoredPlugin(VirtualFile file) {
-        for (MonitoredPlugin plugin : monitoredPlugins.values()) {
-            String path = VirtualFileManager.getRelativePath(plugin.baseDir, file);
-            if (path != null) {
-                return plugin;
-            }
-        }
-        return null;
+    public MonitoredPlugin getMonitoredPlugin(VirtualFile file) {
+        return findEnclosing(monitoredPlugins, file);
     }
 
-    public synchronized MonitoredFileSystem getMonitoredFileSystemFromBaseDir(VirtualFile baseDir) {
-        for (MonitoredFileSystem libraryFileSystem : monitoredLibraries.values()) {
-            if (libraryFileSystem.baseDir.getUrl().equals(baseDir.getUrl())) {
-                return libraryFileSystem;
-            }
-        }
-        for (MonitoredFileSystem pluginFileSystem : monitoredPlugins.values()) {
-            if (pluginFileSystem.baseDir.getUrl().equals(baseDir.getUrl())) {
-                return pluginFileSystem;
-            }
-        }
-        return null;
+    public MonitoredFileSystem getMonitoredFileSystemFromBaseDir(VirtualFile baseDir) {
+        String url = baseDir.getUrl();
+        MonitoredFileSystem libraryFileSystem = monitoredLibraries.get(url);
+        return libraryFileSystem != null ? libraryFileSystem : monitoredPlugins.get(url);
     }
 
     private List<VirtualFile> listModulesRoot(Project[] projects) {
@@ -200,43 +196,48 @@ public class MonitoredFilesIndex implements ApplicationComponent {
         return result;
     }
 
-    public synchronized List<MonitoredRecipeFile> getMonitoredFilesNestedUnderDir(VirtualFile directory) {
-        List<MonitoredRecipeFile> result = new ArrayList<>();
-
-        for (MonitoredRecipeFile monitoredRecipeFile : monitoredRecipeFiles.values()) {
-            String path = VirtualFileManager.getRelativePath(directory, monitoredRecipeFile.file);
-            if (path != null) {
-                result.add(monitoredRecipeFile);
-            }
-        }
+    public List<MonitoredRecipeFile> getMonitoredFilesNestedUnderDir(VirtualFile directory) {
+        return findNestedUnder(monitoredRecipeFilesByUrl, directory);
+    }
 
-        return result;
+    public List<MonitoredPlugin> getMonitoredPluginsNestedUnderDir(VirtualFile directory) {
+        return findNestedUnder(monitoredPlugins, directory);
     }
 
-    public synchronized List<MonitoredPlugin> getMonitoredPluginsNestedUnderDir(VirtualFile directory) {
-        List<MonitoredPlugin> result = new ArrayList<>();
+    public List<MonitoredLibrary> getMonitoredLibrariesNestedUnderDir(VirtualFile directory) {
+        return findNestedUnder(monitoredLibraries, directory);
+    }
 
-        for (MonitoredPlugin monitoredPlugin : monitoredPlugins.values()) {
-            String path = VirtualFileManager.getRelativePath(directory, monitoredPlugin.baseDir);
-            if (path != null) {
-                result.add(monitoredPlugin);
+    /**
+     * Returns the item whose URL is the closest parent of the given file, by looking up each of its parent directories.
+     */
+    private static <T> T findEnclosing(NavigableMap<String, T> index, VirtualFile file) {
+        if (index.isEmpty()) {
+            return null;
+        }
+        String url = file.getUrl();
+        for (int end = url.lastIndexOf('/'); end > 0; end = url.lastIndexOf('/', end - 1)) {
+            T result = index.get(url.substring(0, end));
+            if (result != null) {
+                return result;
             }
         }
-
-        return result;
+        return null;
     }
 
-    public synchronized List<MonitoredLibrary> getMonitoredLibrariesNestedUnderDir(VirtualFile directory) {
-        List<MonitoredLibrary> result = new ArrayList<>();
+    private static <T> List<T> findNestedUnder(NavigableMap<String, T> index, VirtualFile directory) {
+        return new ArrayList<>(PathMaps.nestedUnder(index, directory.getUrl()).values());
+    }
 
-        for (MonitoredLibrary monitoredLibrary : monitoredLibraries.values()) {
-            String path = VirtualFileManager.getRelativePath(directory, monitoredLibrary.baseDir);
-            if (path != null) {
-                result.add(monitoredLibrary);
-            }
-        }
-        return result;
+    private static <T> NavigableMap<String, T> copyWith(NavigableMap<String, T> index, String url, T value) {
+        NavigableMap<String, T> result = new TreeMap<>(index);
+        result.put(url, value);
+        return Collections.unmodifiableNavigableMap(result);
     }
 
+    private static <T> NavigableMap<String, T> copyWithout(NavigableMap<String, T> index, String url) {
+        NavigableMap<String, T> result = new TreeMap<>(index);
+        result.remove(url);
+        return Collections.unmodifiableNavigableMap(result);
+    }
 }
-
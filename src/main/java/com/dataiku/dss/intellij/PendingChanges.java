@@ -0,0 +1,115 @@
+package com.dataiku.dss.intellij;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Local changes waiting to be sent to DSS by the {@link BackgroundSynchronizer}.
+ * <p>
+ * Saves are keyed by file, so that saving the same file several times before the changes are flushed results in a single upload of its
+ * last content. Structural changes (file creations, moves, renames, deletions or conflicts) are merged into a single synchronization of
+ * the recipes, plugins and libraries they affect, each plugin or library being limited to the subtrees in which changes were made.
+ */
+class PendingChanges {
+    interface Upload {
+        void run(ProgressIndicator indicator) throws IOException;
+    }
+
+    private final Map<String, Upload> uploads = new LinkedHashMap<>();
+    private final Set<MonitoredRecipeFile> recipeFiles = new LinkedHashSet<>();
+    private final Map<MonitoredFileSystem, Set<String>> fileSystems = new LinkedHashMap<>(); // Dirty subtrees, null if the whole file system is dirty
+
+    synchronized void addUpload(String path, Upload upload) {
+        Preconditions.checkNotNull(path, "path");
+        Preconditions.checkNotNull(upload, "upload");
+        // Re-insert so that uploads are flushed in the order of the last save.
+        uploads.remove(path);
+        uploads.put(path, upload);
+    }
+
+    synchronized void addRecipeFile(MonitoredRecipeFile recipeFile) {
+        recipeFiles.add(recipeFile);
+        uploads.remove(recipeFile.file.getPath()); // Will be handled by the synchronization
+    }
+
+    /**
+     * @param path path of the changed file or folder, relative to the base directory of the file system, or null if changes may have been
+     *             made anywhere in the file system.
+     */
+    synchronized void addFileSystem(MonitoredFileSystem fileSystem, @Nullable String path) {
+        Preconditions.checkNotNull(fileSystem, "fileSystem");
+        if (path == null || path.isEmpty()) {
+            fileSystems.put(fileSystem, null);
+        } else if (!fileSystems.containsKey(fileSystem)) {
+            fileSystems.put(fileSystem, Sets.newHashSet(path));
+        } else {
+            Set<String> dirtyPaths = fileSystems.get(fileSystem);
+            if (dirtyPaths != null) {
+                addDirtyPath(dirtyPaths, path);
+            }
+        }
+        // Files of these subtrees will be handled by the synchronization
+        String subtree = path == null || path.isEmpty() ? fileSystem.baseDir.getPath() : fileSystem.baseDir.getPath() + "/" + path;
+        uploads.keySet().removeIf(uploadPath -> uploadPath.startsWith(subtree + "/") || uploadPath.equals(subtree));
+    }
+
+    /**
+     * Adds a subtree to the given set, unless it is nested in one that is already there. Subtrees nested in the new one are dropped.
+     */
+    private static void addDirtyPath(Set<String> dirtyPaths, String path) {
+        for (String dirtyPath : dirtyPaths) {
+            if (path.equals(dirtyPath) || path.startsWith(dirtyPath + "/")) {
+                return;
+            }
+        }
+        dirtyPaths.removeIf(dirtyPath -> dirtyPath.startsWith(path + "/"));
+        dirtyPaths.add(path);
+    }
+
+    synchronized List<Upload> drainUploads() {
+        List<Upload> result = new ArrayList<>(uploads.values());
+        uploads.clear();
+        return result;
+    }
+
+    synchronized SynchronizeRequest drainSynchronizeRequest() {
+        List<MonitoredPlugin> plugins = new ArrayList<>();
+        List<MonitoredLibrary> libraries = new ArrayList<>();
+        Map<MonitoredFileSystem, Set<String>> dirtyPaths = new HashMap<>();
+        for (Map.Entry<MonitoredFileSystem, Set<String>> entry : fileSystems.entrySet()) {
+            MonitoredFileSystem fileSystem = entry.getKey();
+            if (fileSystem instanceof MonitoredPlugin) {
+                plugins.add((MonitoredPlugin) fileSystem);
+            } else if (fileSystem instanceof MonitoredLibrary) {
+                libraries.add((MonitoredLibrary) fileSystem);
+            }
+            if (entry.getValue() != null) {
+                dirtyPaths.put(fileSystem, entry.getValue());
+            }
+        }
+        SynchronizeRequest result = new SynchronizeRequest(new ArrayList<>(recipeFiles), plugins, libraries, dirtyPaths);
+        recipeFiles.clear();
+        fileSystems.clear();
+        return result;
+    }
+
+    /**
+     * Drops all pending changes, used when a full synchronization is about to run and will pick them up anyway.
+     */
+    synchronized void clear() {
+        uploads.clear();
+        recipeFiles.clear();
+        fileSystems.clear();
+    }
+}
@@ -0,0 +1,79 @@
+package com.dataiku.dss.intellij;
+
+import java.util.Random;
+
+/**
+ * Computes the delay before the next background poll of DSS. Polls are spaced out exponentially while no change is seen (up to
+ * {@link #MAX_BACKOFF_FACTOR} times the configured interval), and brought closer for a few polls after a remote change or a local save,
+ * when other changes are likely to follow. A random jitter is applied so that IDEs started at the same time do not poll DSS in lockstep.
+ */
+class PollingSchedule {
+    static final int MIN_INTERVAL_SECONDS = 10;
+    private static final int MAX_BACKOFF_FACTOR = 8;
+    private static final int FAST_POLLS_AFTER_CHANGE = 5;
+    private static final int FAST_INTERVAL_DIVISOR = 4;
+    private static final double JITTER_RATIO = 0.1;
+
+    private final Random random;
+    private final boolean adaptive;
+    private final int intervalSeconds;
+    private int backoffFactor = 1;
+    private int fastPollsRemaining = 0;
+
+    /**
+     * @param adaptive if false, polls are always spaced out by the configured interval (still with jitter).
+     */
+    PollingSchedule(int intervalSeconds, boolean adaptive, Random random) {
+        this.intervalSeconds = Math.max(MIN_INTERVAL_SECONDS, intervalSeconds);
+        this.adaptive = adaptive;
+        this.random = random;
+    }
+
+    int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Records the outcome of a poll.
+     *
+     * @param changesSeen true if the poll brought remote changes (or conflicts).
+     */
+    synchronized void pollCompleted(boolean changesSeen) {
+        if (changesSeen) {
+            changeSeen();
+        } else if (fastPollsRemaining > 0) {
+            fastPollsRemaining--;
+        } else {
+            backoffFactor = Math.min(MAX_BACKOFF_FACTOR, backoffFactor * 2);
+        }
+    }
+
+    synchronized void changeSeen() {
+        backoffFactor = 1;
+        fastPollsRemaining = FAST_POLLS_AFTER_CHANGE;
+    }
+
+    synchronized long nextDelayMillis() {
+        long delaySeconds;
+        if (!adaptive) {
+            delaySeconds = intervalSeconds;
+        } else if (fastPollsRemaining > 0) {
+            delaySeconds = getFastIntervalSeconds();
+        } else {
+            delaySeconds = (long) intervalSeconds * backoffFactor;
+        }
+        double jitter = 1 + JITTER_RATIO * (2 * random.nextDouble() - 1);
+        return Math.round(delaySeconds * 1000 * jitter);
+    }
+
+    /**
+     * Returns the delay before the next poll right after a change, without jitter.
+     */
+    long getFastIntervalMillis() {
+        return (adaptive ? getFastIntervalSeconds() : intervalSeconds) * 1000L;
+    }
+
+    private int getFastIntervalSeconds() {
+        return Math.max(MIN_INTERVAL_SECONDS, intervalSeconds / FAST_INTERVAL_DIVISOR);
+    }
+}
@@ -1,22 +1,90 @@
 package com.dataiku.dss.intellij;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.jetbrains.annotations.NotNull;
+
+import com.dataiku.dss.Logger;
 import com.dataiku.dss.intellij.config.DssInstance;
 import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.ComponentUtils;
 import com.dataiku.dss.model.dss.DssException;
 import com.dataiku.dss.model.dss.Recipe;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.intellij.openapi.components.ApplicationComponent;
+
+/**
+ * Recipes of the DSS projects containing tracked recipes, shared by all synchronizations so that polling does not list all recipes of
+ * each project every time. Listings expire after a configurable delay, and at most a bounded number of projects are kept.
+ * <p>
+ * The delay trades requests for freshness: a recipe modified in DSS by someone else is only seen by background polls once the listing of
+ * its project has expired, i.e. up to the configured delay later. By default it is shorter than the poll interval, so only polls made in
+ * quick succession (e.g. after a change) share listings. Explicit synchronizations drop all listings first, so they always see the latest
+ * version of the recipes.
+ * <p>
+ * The cache is rebuilt as soon as its settings change.
+ * <p>
+ * Recipes saved by the plugin itself are updated in place with their new version, instead of invalidating the whole listing.
+ */
+public class RecipeCache implements ApplicationComponent {
+    private static final Logger log = Logger.getInstance(RecipeCache.class);
+
+    private DssSettings dssSettings;
+    private Cache<RecipeCacheProject, List<Recipe>> cachedRecipes;
+    private int cacheTtlInSeconds;
+    private int cacheMaxProjects;
+
+    public static RecipeCache getInstance() {
+        return ComponentUtils.getComponent(RecipeCache.class);
+    }
+
+    @NotNull
+    @Override
+    public String getComponentName() {
+        return "DSSRecipeCache";
+    }
+
+    @Override
+    public void initComponent() {
+        dssSettings = DssSettings.getInstance();
+    }
 
-public class RecipeCache {
-    private final DssSettings dssSettings;
-    private final Map<RecipeCacheProject, List<Recipe>> cachedRecipes = new HashMap<>();
+    @Override
+    public void disposeComponent() {
+        Cache<RecipeCacheProject, List<Recipe>> cache = getCache();
+        CacheStats stats = cache.stats();
+        log.info(String.format("Recipe cache: %d hits, %d misses", stats.hitCount(), stats.missCount()));
+        cache.invalidateAll();
+    }
 
-    public RecipeCache(DssSettings dssSettings) {
-        this.dssSettings = dssSettings;
+    /**
+     * Returns the cache, rebuilt (and thus emptied) if its settings have changed since it was built.
+     */
+    private synchronized Cache<RecipeCacheProject, List<Recipe>> getCache() {
+        int ttlInSeconds = dssSettings.getRecipeCacheTtlInSeconds();
+        int maxProjects = dssSettings.getRecipeCacheMaxProjects();
+        if (cachedRecipes == null || ttlInSeconds != cacheTtlInSeconds || maxProjects != cacheMaxProjects) {
+            if (cachedRecipes != null) {
+                log.info(String.format("Recipe cache settings changed (TTL: %d s, max projects: %d), rebuilding it", ttlInSeconds, maxProjects));
+            }
+            cachedRecipes = CacheBuilder.newBuilder()
+                    .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                    .maximumSize(maxProjects)
+                    .recordStats()
+                    .build();
+            cacheTtlInSeconds = ttlInSeconds;
+            cacheMaxProjects = maxProjects;
+        }
+        return cachedRecipes;
     }
 
     public Recipe getRecipe(String instanceId, String projectKey, String recipeName) throws DssException {
@@ -32,18 +100,62 @@ public class RecipeCache {
         return null;
     }
 
+    /**
+     * Records the new version of a recipe that has just been saved into DSS, so that it is not seen as remotely modified.
+     */
+    public void recipeSaved(String instanceId, String projectKey, Recipe savedRecipe) {
+        Preconditions.checkNotNull(savedRecipe, "savedRecipe");
+        RecipeCacheProject dssProject = new RecipeCacheProject(instanceId, projectKey);
+        // Listings are never modified once cached, as they may be in use by a synchronization running in another thread.
+        synchronized (this) {
+            Cache<RecipeCacheProject, List<Recipe>> cache = getCache();
+            List<Recipe> projectRecipes = cache.getIfPresent(dssProject);
+            if (projectRecipes != null) {
+                List<Recipe> updatedRecipes = new ArrayList<>(projectRecipes);
+                updatedRecipes.removeIf(recipe -> savedRecipe.name.equals(recipe.name));
+                updatedRecipes.add(savedRecipe);
+                cache.put(dssProject, Collections.unmodifiableList(updatedRecipes));
+            }
+        }
+    }
+
+    /**
+     * Drops all listings, so that the next synchronization sees the latest state of the recipes.
+     */
+    public void invalidateAll() {
+        getCache().invalidateAll();
+    }
+
+    public long getHitCount() {
+        return getCache().stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return getCache().stats().missCount();
+    }
+
     private List<Recipe> getProjectRecipes(String instanceId, String projectKey) throws DssException {
         RecipeCacheProject dssProject = new RecipeCacheProject(instanceId, projectKey);
-        List<Recipe> projectRecipes = cachedRecipes.get(dssProject);
-        if (projectRecipes == null) {
-            DssInstance dssInstance = dssSettings.getDssInstance(instanceId);
-            if (dssInstance == null) {
-                throw new IllegalStateException("Unknown DSS instance name: " + instanceId);
+        try {
+            return getCache().get(dssProject, () -> {
+                DssInstance dssInstance = dssSettings.getDssInstance(instanceId);
+                if (dssInstance == null) {
+                    throw new IllegalStateException("Unknown DSS instance name: " + instanceId);
+                }
+                return Collections.unmodifiableList(dssInstance.createClient().listRecipes(projectKey));
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DssException) {
+                throw (DssException) e.getCause();
+            }
+            throw new DssException("Unable to list recipes of project " + projectKey, e);
+        } catch (UncheckedExecutionException e) {
+            // Unchecked exceptions thrown by the loader are wrapped by the cache
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            projectRecipes = dssInstance.createClient().listRecipes(projectKey);
-            cachedRecipes.put(dssProject, projectRecipes);
+            throw e;
         }
-        return projectRecipes;
     }
 
     private static class RecipeCacheProject {
@@ -1,22 +1,42 @@
 package com.dataiku.dss.intellij;
 
 import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class SynchronizeRequest {
     public final List<MonitoredRecipeFile> recipeFiles;
     public final List<MonitoredPlugin> plugins;
     public final List<MonitoredLibrary> libraries;
+    // Subtrees (relative to their base directory) to synchronize in some plugins & libraries. Others are synchronized as a whole.
+    private final Map<MonitoredFileSystem, Set<String>> dirtyPaths;
 
     public SynchronizeRequest(List<MonitoredRecipeFile> recipeFiles, List<MonitoredPlugin> plugins, List<MonitoredLibrary> libraries) {
+        this(recipeFiles, plugins, libraries, Collections.emptyMap());
+    }
+
+    public SynchronizeRequest(List<MonitoredRecipeFile> recipeFiles, List<MonitoredPlugin> plugins, List<MonitoredLibrary> libraries, Map<MonitoredFileSystem, Set<String>> dirtyPaths) {
         Preconditions.checkNotNull(recipeFiles);
         Preconditions.checkNotNull(plugins);
         Preconditions.checkNotNull(libraries);
+        Preconditions.checkNotNull(dirtyPaths);
 
         this.recipeFiles = recipeFiles;
         this.plugins = plugins;
         this.libraries = libraries;
+        this.dirtyPaths = dirtyPaths;
+    }
+
+    /**
+     * Returns the subtrees to synchronize in the given plugin or library, or null if it must be synchronized as a whole.
+     */
+    @Nullable
+    public Set<String> getDirtyPaths(MonitoredFileSystem fileSystem) {
+        return dirtyPaths.get(fileSystem);
     }
 
     public boolean isEmpty() {
@@ -14,6 +14,15 @@ public class SynchronizeSummary {
 
     public final List<MonitoredFileConflict> fileConflicts = new ArrayList<>();
 
+    public void addAll(SynchronizeSummary other) {
+        locallyDeleted.addAll(other.locallyDeleted);
+        locallyUpdated.addAll(other.locallyUpdated);
+        dssUpdated.addAll(other.dssUpdated);
+        dssDeleted.addAll(other.dssDeleted);
+        conflicts.addAll(other.conflicts);
+        fileConflicts.addAll(other.fileConflicts);
+    }
+
     public boolean isEmpty() {
         return locallyUpdated.isEmpty()
                 && locallyDeleted.isEmpty()
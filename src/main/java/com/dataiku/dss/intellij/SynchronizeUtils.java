@@ -4,11 +4,13 @@ import com.dataiku.dss.intellij.config.DssInstance;
 import com.dataiku.dss.intellij.config.DssSettings;
 import com.dataiku.dss.intellij.utils.VirtualFileManager;
 import com.dataiku.dss.model.DSSClient;
+import com.dataiku.dss.model.dss.Recipe;
 import com.dataiku.dss.model.dss.RecipeAndPayload;
 import com.dataiku.dss.model.metadata.DssLibraryFileMetadata;
 import com.dataiku.dss.model.metadata.DssPluginFileMetadata;
 import com.dataiku.dss.model.metadata.DssRecipeMetadata;
 import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 
@@ -62,15 +64,32 @@ public class SynchronizeUtils {
 
 
     public static void saveRecipeToDss(DSSClient dssClient, MonitoredRecipeFile monitoredFile, String fileContent, boolean flushMetadata) throws IOException {
+        saveRecipeToDss(dssClient, monitoredFile, fileContent, flushMetadata, null);
+    }
+
+    /**
+     * @param remoteRecipe the recipe as just loaded from DSS (to check for conflicts), reused to save it, or null if it is not known.
+     */
+    public static void saveRecipeToDss(DSSClient dssClient, MonitoredRecipeFile monitoredFile, String fileContent, boolean flushMetadata, @Nullable RecipeAndPayload remoteRecipe) throws IOException {
         // File has been updated locally, it needs to be sent to DSS.
         DssRecipeMetadata recipe = monitoredFile.recipe;
-        dssClient.saveRecipeContent(recipe.projectKey, recipe.recipeName, fileContent);
-        RecipeAndPayload updatedRecipe = dssClient.loadRecipe(recipe.projectKey, recipe.recipeName);
+        Recipe savedRecipe = dssClient.saveRecipeContent(recipe.projectKey, recipe.recipeName, fileContent, remoteRecipe);
+        if (savedRecipe == null) {
+            // This version of DSS does not return the new version of the recipe when saving it.
+            savedRecipe = dssClient.loadRecipe(recipe.projectKey, recipe.recipeName).recipe;
+        }
+
+        // The cached listing now knows the new version, so the recipe is not seen as remotely modified by the next synchronization.
+        RecipeCache.getInstance().recipeSaved(recipe.instance, recipe.projectKey, savedRecipe);
 
         // Update metadata & schedule associated metadata file to be updated
-        recipe.versionNumber = updatedRecipe.recipe.versionTag.versionNumber;
-        recipe.contentHash = VirtualFileManager.getContentHash(fileContent);
-        recipe.data = fileContent.getBytes(UTF_8);
+        long contentHash = VirtualFileManager.getContentHash(fileContent);
+        byte[] data = fileContent.getBytes(UTF_8);
+        synchronized (monitoredFile.metadataFile) {
+            recipe.versionNumber = savedRecipe.versionTag.versionNumber;
+            recipe.contentHash = contentHash;
+            recipe.data = data;
+        }
 
         if (flushMetadata) {
             monitoredFile.metadataFile.flush();
@@ -83,7 +102,9 @@ public class SynchronizeUtils {
 
         // Update metadata & schedule associated metadata file to be updated
         monitoredFile.file = newFile;
-        monitoredFile.recipe.path = monitoredFile.recipe.path.substring(0, oldName.length()) + newName;
+        synchronized (monitoredFile.metadataFile) {
+            monitoredFile.recipe.path = monitoredFile.recipe.path.substring(0, oldName.length()) + newName;
+        }
 
         if (flushMetadata) {
             monitoredFile.metadataFile.flush();
@@ -6,28 +6,46 @@ import com.dataiku.dss.intellij.actions.merge.MonitoredPluginFileConflict;
 import com.dataiku.dss.intellij.actions.merge.MonitoredRecipeFileConflict;
 import com.dataiku.dss.intellij.config.DssInstance;
 import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.ArchiveUtils;
 import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.intellij.utils.VirtualFileManager.WriteBatch;
+import com.dataiku.dss.metrics.DssMetrics;
+import com.dataiku.dss.metrics.SyncMetrics;
+import com.dataiku.dss.metrics.SyncMetrics.Phase;
 import com.dataiku.dss.model.DSSClient;
 import com.dataiku.dss.model.dss.DssException;
 import com.dataiku.dss.model.dss.FolderContent;
 import com.dataiku.dss.model.dss.Recipe;
 import com.dataiku.dss.model.dss.RecipeAndPayload;
 import com.dataiku.dss.model.metadata.DssFileMetadata;
-import com.dataiku.dss.model.metadata.DssFileSystemMetadata;
 import com.dataiku.dss.model.metadata.DssLibraryFileMetadata;
 import com.dataiku.dss.model.metadata.DssPluginFileMetadata;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileVisitor;
-import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 import static com.dataiku.dss.intellij.utils.LibraryUtils.LIB_BASE_FOLDER;
 import static com.dataiku.dss.intellij.utils.VirtualFileManager.getContentHash;
@@ -38,51 +56,183 @@ public class SynchronizeWorker {
     private static final String PYC_SUFFIX = ".pyc";
     private static final String CLASS_SUFFIX = ".class";
     private static final String DELETED_SUFFIX = ".deleted";
+    private static final int MAX_PARALLEL_TASKS = 8;
+    private static final int MAX_PARALLEL_TASKS_PER_INSTANCE = 4; // Each task sends its requests one after the other
+    private static final ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_TASKS,
+            new ThreadFactoryBuilder().setNameFormat("DSS synchronization %d").setDaemon(true).build());
     private final DssSettings settings;
 
     private final RecipeCache recipeCache;
     private final VirtualFileManager vFileManager;
-    private final Set<MetadataFile> dirtyMetadataFiles = new HashSet<>();
+    private final boolean runInBackgroundThread;
+    private final Set<MetadataFile> dirtyMetadataFiles = new LinkedHashSet<>();
     private final SynchronizeSummary summary = new SynchronizeSummary();
+    private final SyncMetrics metrics; // Shared by the workers of all tasks
 
     public SynchronizeWorker(DataikuDSSPlugin dssPlugin, DssSettings settings, RecipeCache recipeCache, boolean runInBackgroundThread) {
         this.settings = settings;
         this.recipeCache = recipeCache;
         this.vFileManager = new VirtualFileManager(dssPlugin, runInBackgroundThread);
+        this.runInBackgroundThread = runInBackgroundThread;
+        this.metrics = new SyncMetrics(runInBackgroundThread);
+    }
+
+    private SynchronizeWorker(SynchronizeWorker parent) {
+        this.settings = parent.settings;
+        this.recipeCache = parent.recipeCache;
+        this.vFileManager = parent.vFileManager;
+        this.runInBackgroundThread = parent.runInBackgroundThread;
+        this.metrics = parent.metrics;
     }
 
     public SynchronizeSummary synchronizeWithDSS(SynchronizeRequest request) throws IOException {
         log.info("Starting synchronization at " + DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(LocalDateTime.now()));
+        boolean failed = true;
+        try {
+            SynchronizeSummary result = synchronizeTasks(request);
+            failed = false;
+            return result;
+        } finally {
+            DssMetrics.getInstance().synchronizationCompleted(metrics, failed);
+        }
+    }
+
+    private SynchronizeSummary synchronizeTasks(SynchronizeRequest request) throws IOException {
+        List<SynchronizeTask> tasks = buildTasks(request);
+        if (runInBackgroundThread) {
+            runInParallel(tasks);
+        } else {
+            // Local files are written directly from the calling thread (the EDT), so we cannot delegate the work to other threads.
+            for (SynchronizeTask task : tasks) {
+                task.run();
+            }
+        }
+
+        // Merge the outcome of each task in the order of the request, whatever the order in which they completed.
+        Exception failure = null;
+        for (SynchronizeTask task : tasks) {
+            summary.addAll(task.worker.summary);
+            dirtyMetadataFiles.addAll(task.worker.dirtyMetadataFiles);
+            if (failure == null) {
+                failure = task.failure;
+            }
+        }
+
+        long metadataStart = System.nanoTime();
+        for (MetadataFile dirtyMetadataFile : dirtyMetadataFiles) {
+            dirtyMetadataFile.flush();
+        }
+        metrics.phaseCompleted(Phase.METADATA, metadataStart);
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return summary;
+    }
+
+    /**
+     * Splits the request into independent tasks: one per DSS project for recipes (they share the same recipe listing), and one per plugin
+     * or library. Each task works on its own summary and set of dirty metadata files.
+     */
+    private List<SynchronizeTask> buildTasks(SynchronizeRequest request) {
+        List<SynchronizeTask> tasks = new ArrayList<>();
+
+        Map<String, List<MonitoredRecipeFile>> recipeFilesByProject = new LinkedHashMap<>();
         for (MonitoredRecipeFile recipeFile : request.recipeFiles) {
-            DssInstance dssInstance = settings.getDssInstance(recipeFile.recipe.instance);
+            String projectId = recipeFile.recipe.instance + '/' + recipeFile.recipe.projectKey;
+            recipeFilesByProject.computeIfAbsent(projectId, k -> new ArrayList<>()).add(recipeFile);
+        }
+        for (List<MonitoredRecipeFile> projectRecipeFiles : recipeFilesByProject.values()) {
+            DssInstance dssInstance = settings.getDssInstance(projectRecipeFiles.get(0).recipe.instance);
             if (dssInstance != null) {
-                synchronizeRecipe(dssInstance, recipeFile);
+                tasks.add(new SynchronizeTask(dssInstance, new SynchronizeWorker(this), worker -> {
+                    long start = System.nanoTime();
+                    for (MonitoredRecipeFile recipeFile : projectRecipeFiles) {
+                        worker.synchronizeRecipe(dssInstance, recipeFile);
+                    }
+                    metrics.phaseCompleted(Phase.RECIPES, start);
+                }));
             }
         }
         for (MonitoredPlugin plugin : request.plugins) {
             DssInstance dssInstance = settings.getDssInstance(plugin.plugin.instance);
             if (dssInstance != null) {
-                synchronizeFileSystem(dssInstance, plugin);
+                tasks.add(new SynchronizeTask(dssInstance, new SynchronizeWorker(this), worker -> worker.synchronizeFileSystem(dssInstance, plugin, request.getDirtyPaths(plugin))));
             }
         }
-
         for (MonitoredLibrary library : request.libraries) {
             DssInstance dssInstance = settings.getDssInstance(library.library.instance);
             if (dssInstance != null) {
-                synchronizeFileSystem(dssInstance, library);
+                tasks.add(new SynchronizeTask(dssInstance, new SynchronizeWorker(this), worker -> worker.synchronizeFileSystem(dssInstance, library, request.getDirtyPaths(library))));
             }
         }
+        return tasks;
+    }
 
-        for (MetadataFile dirtyMetadataFile : dirtyMetadataFiles) {
-            dirtyMetadataFile.flush();
+    /**
+     * Runs all tasks on the shared pool, with at most {@link #MAX_PARALLEL_TASKS_PER_INSTANCE} tasks in flight for a given DSS instance.
+     */
+    private static void runInParallel(List<SynchronizeTask> tasks) throws IOException {
+        Map<String, Queue<SynchronizeTask>> tasksByInstance = new LinkedHashMap<>();
+        for (SynchronizeTask task : tasks) {
+            tasksByInstance.computeIfAbsent(task.instanceId, k -> new ConcurrentLinkedQueue<>()).add(task);
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (Queue<SynchronizeTask> instanceTasks : tasksByInstance.values()) {
+            int lanes = Math.min(MAX_PARALLEL_TASKS_PER_INSTANCE, instanceTasks.size());
+            for (int i = 0; i < lanes; i++) {
+                futures.add(executor.submit(() -> {
+                    SynchronizeTask task;
+                    while ((task = instanceTasks.poll()) != null) {
+                        task.run();
+                    }
+                }));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Synchronization has been interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected error while synchronizing with DSS", e.getCause());
+        }
+    }
+
+    private interface SynchronizeOperation {
+        void run(SynchronizeWorker worker) throws IOException;
+    }
+
+    private static class SynchronizeTask {
+        private final String instanceId;
+        private final SynchronizeWorker worker;
+        private final SynchronizeOperation operation;
+        private volatile Exception failure;
+
+        SynchronizeTask(DssInstance dssInstance, SynchronizeWorker worker, SynchronizeOperation operation) {
+            this.instanceId = dssInstance.id;
+            this.worker = worker;
+            this.operation = operation;
+        }
+
+        void run() {
+            try {
+                operation.run(worker);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
         }
-        return summary;
     }
 
     private void synchronizeRecipe(DssInstance dssInstance, MonitoredRecipeFile monitoredFile) throws IOException {
         Preconditions.checkNotNull(dssInstance);
         Preconditions.checkNotNull(monitoredFile);
 
+        metrics.fileScanned();
         DSSClient dssClient = dssInstance.createClient();
         Recipe recipe = recipeCache.getRecipe(dssInstance.id, monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName);
         // De-index the missing file
@@ -94,24 +244,27 @@ public class SynchronizeWorker {
                 log.info(String.format("Recipe '%s' has been locally deleted. Stop tracking it.", monitoredFile.recipe));
                 summary.conflicts.add(String.format("Recipe '%s' has been locally deleted. Reopen it if you need to change it again.", monitoredFile.recipe));
             }
-            monitoredFile.metadataFile.metadata.recipes.remove(monitoredFile.recipe);
+            synchronized (monitoredFile.metadataFile) {
+                monitoredFile.metadataFile.metadata.recipes.remove(monitoredFile.recipe);
+            }
             dirtyMetadataFiles.add(monitoredFile.metadataFile);
             MonitoredFilesIndex.getInstance().removeFromIndex(monitoredFile);
             return;
         }
 
         long remoteVersionNumber = recipe.versionTag.versionNumber;
-        int originalHash = monitoredFile.recipe.contentHash;
+        long originalHash = monitoredFile.recipe.contentHash;
         long originalVersionNumber = monitoredFile.recipe.versionNumber;
-        String localFileContent = VirtualFileManager.readVirtualFile(monitoredFile.file);
-        int localHash = getContentHash(localFileContent);
+        long localHash = getContentHash(monitoredFile.file); // Cached by the VFS, the recipe is only read if it has changed
 
         if (remoteVersionNumber == originalVersionNumber) {
             // No change on remote server since last synchronization.
             if (localHash != originalHash) {
                 // File locally modified => Upload it to DSS
                 log.info(String.format("Recipe '%s' has been locally modified. Saving it onto the remote DSS instance", monitoredFile.recipe));
+                String localFileContent = VirtualFileManager.readVirtualFile(monitoredFile.file);
                 SynchronizeUtils.saveRecipeToDss(dssClient, monitoredFile, localFileContent, false);
+                metrics.fileUploaded();
                 dirtyMetadataFiles.add(monitoredFile.metadataFile);
                 summary.dssUpdated.add(String.format("Recipe '%s.%s' saved into DSS instance.", monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName));
             } else {
@@ -119,34 +272,31 @@ public class SynchronizeWorker {
             }
         } else {
             RecipeAndPayload recipeAndPayload = dssClient.loadRecipe(monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName);
+            metrics.fileDownloaded();
             if (recipeAndPayload == null) {
                 Messages.showErrorDialog(String.format("Recipe '%s' cannot be loaded from project '%s' on DSS instance.", monitoredFile.recipe.recipeName, monitoredFile.recipe.projectKey), "Synchronization Error");
                 return;
             }
-            int remoteHash = getContentHash(recipeAndPayload.payload);
+            long remoteHash = getContentHash(recipeAndPayload.payload);
 
             // Changed on remote server since last synchronization
             if (remoteHash == localHash) {
                 // Both files have been changed in the same way. Just update the metadata on our side.
                 log.info(String.format("Recipe '%s' has been remotely modified but is the same as local version. Updating local metadata.", monitoredFile.recipe));
-                monitoredFile.recipe.contentHash = remoteHash;
-                monitoredFile.recipe.data = recipeAndPayload.payload.getBytes(UTF_8);
-                monitoredFile.recipe.versionNumber = remoteVersionNumber;
+                updateRecipeMetadata(monitoredFile, remoteHash, recipeAndPayload.payload, remoteVersionNumber);
                 dirtyMetadataFiles.add(monitoredFile.metadataFile);
             } else {
                 if (localHash == originalHash) {
                     log.info(String.format("Recipe '%s' has been remotely modified but not modified locally since last synchronization. Updating local copy of the recipe.", monitoredFile.recipe));
                     vFileManager.writeToVirtualFile(monitoredFile.file, recipeAndPayload.payload);
-                    monitoredFile.recipe.contentHash = remoteHash;
-                    monitoredFile.recipe.data = recipeAndPayload.payload.getBytes(UTF_8);
-                    monitoredFile.recipe.versionNumber = remoteVersionNumber;
+                    updateRecipeMetadata(monitoredFile, remoteHash, recipeAndPayload.payload, remoteVersionNumber);
                     dirtyMetadataFiles.add(monitoredFile.metadataFile);
                     summary.locallyUpdated.add(String.format("Recipe '%s.%s' updated with latest version found on DSS instance.", monitoredFile.recipe.projectKey, monitoredFile.recipe.recipeName));
                 } else {
                     // Conflict!! Save remote file as .remote and send the local version to DSS
                     log.info(String.format("Conflict detected for recipe '%s'.", monitoredFile.recipe));
                     MonitoredRecipeFileConflict conflict = new MonitoredRecipeFileConflict(monitoredFile);
-                    conflict.localData = localFileContent.getBytes(UTF_8);
+                    conflict.localData = VirtualFileManager.readVirtualFileAsByteArray(monitoredFile.file);
                     conflict.remoteData = recipeAndPayload.payload.getBytes(UTF_8);
                     conflict.originalData = monitoredFile.metadataFile.readDataBlob(monitoredFile.recipe.dataBlobId);
                     conflict.originalVersionNumber = originalVersionNumber;
@@ -159,9 +309,27 @@ public class SynchronizeWorker {
         }
     }
 
-    private void synchronizeFileSystem(DssInstance dssInstance, MonitoredFileSystem monitoredFS) throws IOException {
-        DSSClient dssClient = dssInstance.createClient();
+    private static void updateRecipeMetadata(MonitoredRecipeFile monitoredFile, long contentHash, String content, long versionNumber) {
+        byte[] data = content.getBytes(UTF_8);
+        synchronized (monitoredFile.metadataFile) {
+            monitoredFile.recipe.contentHash = contentHash;
+            monitoredFile.recipe.data = data;
+            monitoredFile.recipe.versionNumber = versionNumber;
+        }
+    }
+
+    /**
+     * @param dirtyPaths subtrees (relative to the base directory) in which local changes were made, the rest of the file system being left
+     *                   untouched, or null to synchronize the whole file system.
+     */
+    private void synchronizeFileSystem(DssInstance dssInstance, MonitoredFileSystem monitoredFS, @Nullable Set<String> dirtyPaths) throws IOException {
+        synchronizeFileSystem(dssInstance.createClient(), monitoredFS, dirtyPaths);
+    }
+
+    @VisibleForTesting
+    void synchronizeFileSystem(DSSClient dssClient, MonitoredFileSystem monitoredFS, @Nullable Set<String> dirtyPaths) throws IOException {
         List<FolderContent> folderContents;
+        long listingStart = System.nanoTime();
         if (monitoredFS instanceof MonitoredPlugin) {
             if(Strings.isNullOrEmpty(monitoredFS.fsMetadata.id)) {
                 monitoredFS.fsMetadata.id = ((MonitoredPlugin) monitoredFS).plugin.pluginId;
@@ -171,249 +339,446 @@ public class SynchronizeWorker {
         else {
             folderContents = dssClient.listLibraryFiles(monitoredFS.fsMetadata.id);
         }
-        synchronizeFolder(dssClient, monitoredFS, monitoredFS.baseDir, folderContents);
-
-        // Add all files in plugin or lib baseDir that are not in remote plugin or lib
-        Map<String, FolderContent> indexedFolderContent = index(folderContents);
-        addOrDeleteMissingFiles(monitoredFS, indexedFolderContent, dssClient);
-        addOrDeleteMissingFolders(monitoredFS, indexedFolderContent, dssClient);
-    }
-
-    private void addOrDeleteMissingFiles(MonitoredFileSystem monitoredFS, Map<String, FolderContent> index, DSSClient dssClient) throws IOException {
-        List<VirtualFile> missingFiles = new ArrayList<>();
-        String baseUrl = monitoredFS.baseDir.getUrl();
-        VfsUtilCore.visitChildrenRecursively(monitoredFS.baseDir, new VirtualFileVisitor<Object>() {
-            @Override
-            public boolean visitFile(@NotNull VirtualFile file) {
-                String fileUrl = file.getUrl();
-                if (fileUrl.startsWith(baseUrl) && fileUrl.length() > baseUrl.length()) {
-                    String path = fileUrl.substring(baseUrl.length() + 1);
-                    if (!index.containsKey(path) && !file.isDirectory() && !ignoreFile(file.getName())) {
-                        missingFiles.add(file);
+        metrics.phaseCompleted(Phase.LISTING, listingStart);
+
+        // On first synchronization, transfer the whole plugin or library at once if one of the sides is empty.
+        boolean firstSynchronization;
+        synchronized (monitoredFS.metadataFile) {
+            firstSynchronization = monitoredFS.fsMetadata.files.isEmpty();
+        }
+        if (firstSynchronization && dirtyPaths == null) {
+            long archiveStart = System.nanoTime();
+            try {
+                if (folderContents.isEmpty()) {
+                    if (uploadArchive(dssClient, monitoredFS)) {
+                        return;
                     }
-                }
-                return super.visitFile(file);
-            }
-        });
-        for (VirtualFile file : missingFiles) {
-            String fileUrl = file.getUrl();
-            String path = fileUrl.substring(baseUrl.length() + 1);
-            byte[] content = VirtualFileManager.readVirtualFileAsByteArray(file);
-            int contentHash = VirtualFileManager.getContentHash(content);
-
-            DssFileMetadata trackedFile = monitoredFS.findFile(path);
-            if (trackedFile == null) {
-                // Newly added => sent it to DSS
-                log.info(String.format("Uploading locally added file '%s' (path=%s)", file.getName(), path));
-                if (monitoredFS instanceof MonitoredPlugin) {
-                    dssClient.uploadPluginFile(monitoredFS.fsMetadata.id, path, content);
                 } else {
-                    dssClient.uploadLibraryFile(monitoredFS.fsMetadata.id, path, content);
+                    downloadArchive(dssClient, monitoredFS, folderContents);
                 }
-                summary.dssUpdated.add(String.format("File '%s' uploaded to DSS instance.", path));
-                updateFileMetadata(monitoredFS, path, contentHash, content);
+            } finally {
+                metrics.phaseCompleted(Phase.ARCHIVES, archiveStart);
+            }
+        }
 
-            } else {
-                // Has been modified locally?
-                if (trackedFile.contentHash != contentHash) {
-                    // Rename the file into ".deleted" and stop tracking it.
-                    String newName = findNonExistingFilename(file, file.getName() + DELETED_SUFFIX);
-                    vFileManager.renameVirtualFile(file, newName);
-                    summary.conflicts.add(String.format("File '%s' has been removed from DSS instance but modified locally. Local copy has been renamed into '%s'.", path, newName));
-                } else {
-                    // No, delete the file locally
-                    vFileManager.deleteVirtualFile(file);
-                    summary.locallyDeleted.add(String.format("File '%s' locally deleted because it has been removed from DSS instance.", path));
-                }
-                removeFileMetadata(monitoredFS, path);
+        // Downloaded files are made visible in the IDE at once, instead of one at a time
+        long comparisonStart = System.nanoTime();
+        WriteBatch writeBatch = vFileManager.startWriteBatch();
+        try {
+            synchronizeFolder(dssClient, monitoredFS, writeBatch, "", WriteBatch.toIoFile(monitoredFS.baseDir), monitoredFS.baseDir, folderContents, dirtyPaths);
+        } finally {
+            writeBatch.commit();
+            metrics.phaseCompleted(Phase.COMPARISON, comparisonStart);
+        }
+    }
+
+    private static boolean isDirty(@Nullable Set<String> dirtyPaths, String path) {
+        if (dirtyPaths == null) {
+            return true;
+        }
+        for (String dirtyPath : dirtyPaths) {
+            if (path.equals(dirtyPath) || path.startsWith(dirtyPath + "/")) {
+                return true;
             }
         }
+        return false;
     }
 
+    private static boolean containsDirtyPaths(Set<String> dirtyPaths, String folderPath) {
+        for (String dirtyPath : dirtyPaths) {
+            if (dirtyPath.startsWith(folderPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    private void addOrDeleteMissingFolders(MonitoredFileSystem monitoredFS, Map<String, FolderContent> index, DSSClient dssClient) throws IOException {
-        List<VirtualFile> missingFolders = new ArrayList<>();
-        String baseUrl = monitoredFS.baseDir.getUrl();
-        VfsUtilCore.visitChildrenRecursively(monitoredFS.baseDir, new VirtualFileVisitor<Object>() {
-            @Override
-            public boolean visitFile(@NotNull VirtualFile file) {
-                String fileUrl = file.getUrl();
-                if (fileUrl.startsWith(baseUrl) && fileUrl.length() > baseUrl.length()) {
-                    String path = fileUrl.substring(baseUrl.length() + 1);
-                    if (!index.containsKey(path) && file.isDirectory() && !ignoreFile(file.getName())) {
-                        missingFolders.add(file);
-                    }
-                }
-                return super.visitFile(file);
-            }
-        });
-        for (VirtualFile folder : missingFolders) {
-            String fileUrl = folder.getUrl();
-            String path = fileUrl.substring(baseUrl.length() + 1);
-
-            DssFileMetadata trackedFile = monitoredFS.findFile(path);
-            if (trackedFile == null) {
-                // Newly added => sent it to DSS
-                log.info(String.format("Uploading locally added directory '%s' (path=%s)", folder.getName(), path));
-                if (monitoredFS instanceof MonitoredPlugin) {
-                    dssClient.createPluginFolder(monitoredFS.fsMetadata.id, path);
-                } else {
-                    dssClient.createLibraryFolder(monitoredFS.fsMetadata.id, path);
-                }
-                summary.dssUpdated.add(String.format("Directory '%s' created into DSS instance.", path));
+    /**
+     * Uploads all local files as a zip archive, replacing the (empty) remote content.
+     *
+     * @return false if there is nothing to upload, or if DSS does not support archive uploads.
+     */
+    private boolean uploadArchive(DSSClient dssClient, MonitoredFileSystem monitoredFS) throws IOException {
+        File baseDir = WriteBatch.toIoFile(monitoredFS.baseDir);
+        Predicate<File> accept = file -> !ignoreFile(file.getName());
+        File[] children = baseDir.listFiles();
+        if (children == null || Arrays.stream(children).noneMatch(accept)) {
+            return false;
+        }
+
+        String id = monitoredFS.fsMetadata.id;
+        Map<String, Long> packedEntries = new LinkedHashMap<>(); // Content hash of each uploaded entry, 0 for folders
+        DSSClient.ContentWriter writer = out -> ArchiveUtils.pack(out, baseDir, accept, (path, localFile, contentHash) -> packedEntries.put(path, localFile.isDirectory() ? null : contentHash));
+        log.info(String.format("Uploading all files of '%s' as an archive", id));
+        boolean uploaded = monitoredFS instanceof MonitoredPlugin
+                ? dssClient.uploadPluginArchive(id, writer)
+                : dssClient.uploadLibraryArchive(id, writer);
+        if (!uploaded) {
+            return false;
+        }
+        for (Map.Entry<String, Long> entry : packedEntries.entrySet()) {
+            String path = entry.getKey();
+            if (entry.getValue() == null) {
                 updateFileMetadata(monitoredFS, path, 0, null);
             } else {
-                // Is empty
-                VirtualFile[] children = folder.getChildren();
-                if (children == null || children.length == 0) {
-                    // No, delete the file locally
-                    vFileManager.deleteVirtualFile(folder);
-                    summary.locallyDeleted.add(String.format("Plugin directory '%s' locally deleted because it has been removed from DSS instance.", path));
-                }
-                removeFileMetadata(monitoredFS, path);
+                String dataBlobId = monitoredFS.metadataFile.writeDataBlob(new File(baseDir, path));
+                updateFileMetadata(monitoredFS, path, entry.getValue(), null, dataBlobId, null);
+                metrics.fileHashed();
+                metrics.fileUploaded();
+                summary.dssUpdated.add(String.format("File '%s' uploaded to DSS instance.", path));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Downloads all remote files as a zip archive, if DSS supports it. The files that are missing from the archive are downloaded afterwards,
+     * one at a time, by the regular synchronization.
+     */
+    private void downloadArchive(DSSClient dssClient, MonitoredFileSystem monitoredFS, List<FolderContent> folderContents) throws IOException {
+        Map<String, FolderContent> index = index(folderContents);
+        File baseDir = WriteBatch.toIoFile(monitoredFS.baseDir);
+        // Committed before going on, so that the unpacked files are visible to the VFS when the regular synchronization walks them.
+        WriteBatch writeBatch = vFileManager.startWriteBatch();
+        try {
+            DSSClient.ContentReader<?> reader = archive -> {
+                ArchiveUtils.unpack(archive, writeBatch, baseDir, path -> index.containsKey(path) && !isFolder(index.get(path)), (path, localFile, contentHash) -> {
+                    String dataBlobId = monitoredFS.metadataFile.writeDataBlob(writeBatch.getWrittenContent(localFile));
+                    updateFileMetadata(monitoredFS, path, contentHash, null, dataBlobId, index.get(path));
+                    metrics.fileDownloaded();
+                    summary.locallyUpdated.add(String.format("File '%s' downloaded from DSS instance.", path));
+                });
+                return null;
+            };
+            String id = monitoredFS.fsMetadata.id;
+            if (monitoredFS instanceof MonitoredPlugin) {
+                dssClient.downloadPluginArchive(id, reader);
+            } else {
+                dssClient.downloadLibraryArchive(id, reader);
+            }
+        } finally {
+            writeBatch.commit();
+        }
+    }
+
+    private static boolean isFolder(FolderContent file) {
+        return file.mimeType == null || "null".equals(file.mimeType);
+    }
+
+    /**
+     * Synchronizes a folder by comparing its remote content, its local content and the tracked files in a single pass: local entries are
+     * listed once (from the VFS) and matched by name with the remote ones, and local files are only read if they may have changed.
+     *
+     * @param localDir the local folder, or null if it is not known from the VFS (e.g. just created by the write batch).
+     */
+    private void synchronizeFolder(DSSClient dssClient, MonitoredFileSystem monitoredFS, WriteBatch writeBatch, String path, File parent, @Nullable VirtualFile localDir, @Nullable List<FolderContent> folderContents, @Nullable Set<String> dirtyPaths) throws IOException {
+        Map<String, VirtualFile> localChildren = new LinkedHashMap<>();
+        if (localDir != null && localDir.isDirectory()) {
+            for (VirtualFile child : localDir.getChildren()) {
+                localChildren.put(child.getName(), child);
+            }
+        }
+        // Remote entries first, in the order of the listing, then the local ones unknown from DSS.
+        if (folderContents != null) {
+            for (FolderContent remoteFile : folderContents) {
+                VirtualFile localFile = localChildren.remove(remoteFile.name);
+                synchronizeEntry(dssClient, monitoredFS, writeBatch, remoteFile.path, new File(parent, remoteFile.name), remoteFile, localFile, dirtyPaths);
+            }
+        }
+        for (VirtualFile localFile : localChildren.values()) {
+            if (!ignoreFile(localFile.getName())) {
+                String localPath = path.isEmpty() ? localFile.getName() : path + "/" + localFile.getName();
+                synchronizeEntry(dssClient, monitoredFS, writeBatch, localPath, new File(parent, localFile.getName()), null, localFile, dirtyPaths);
             }
         }
     }
 
+    private void synchronizeEntry(DSSClient dssClient, MonitoredFileSystem monitoredFS, WriteBatch writeBatch, String path, File ioFile, @Nullable FolderContent remoteFile, @Nullable VirtualFile localFile, @Nullable Set<String> dirtyPaths) throws IOException {
+        boolean remoteFolder = remoteFile != null && isFolder(remoteFile);
+        boolean localFolder = localFile != null && localFile.isDirectory();
+        if (!isDirty(dirtyPaths, path)) {
+            // Outside of the dirty subtrees, only walk down to the ones nested in this folder.
+            if ((remoteFolder || localFolder) && containsDirtyPaths(dirtyPaths, path)) {
+                synchronizeFolder(dssClient, monitoredFS, writeBatch, path, ioFile, localFile, remoteFolder ? remoteFile.children : null, dirtyPaths);
+            }
+            return;
+        }
+        DssFileMetadata trackedFile = monitoredFS.findFile(path);
+        if (remoteFolder) {
+            synchronizeRemoteFolder(dssClient, monitoredFS, writeBatch, ioFile, remoteFile, localFile, trackedFile, dirtyPaths);
+        } else if (remoteFile != null) {
+            synchronizeRemoteFile(dssClient, monitoredFS, writeBatch, ioFile, remoteFile, localFile, trackedFile);
+        } else if (localFolder) {
+            synchronizeLocalFolder(dssClient, monitoredFS, writeBatch, path, ioFile, localFile, trackedFile, dirtyPaths);
+        } else if (localFile != null) {
+            synchronizeLocalFile(dssClient, monitoredFS, path, ioFile, localFile, trackedFile);
+        }
+    }
 
-    private void synchronizeFolder(DSSClient dssClient, MonitoredFileSystem monitoredFS, VirtualFile parent, List<FolderContent> folderContents) throws IOException {
-        String pluginId = monitoredFS.fsMetadata.id;
-        for (FolderContent file : folderContents) {
-            DssFileMetadata trackedFile = monitoredFS.findFile(file.path);
-            if (file.mimeType == null || "null".equals(file.mimeType)) {
-                // Folder
-                log.info(String.format("Synchronize plugin folder '%s'", file.path));
+    /**
+     * Synchronizes a folder present in DSS.
+     */
+    private void synchronizeRemoteFolder(DSSClient dssClient, MonitoredFileSystem monitoredFS, WriteBatch writeBatch, File localDir, FolderContent file, @Nullable VirtualFile localFile, @Nullable DssFileMetadata trackedFile, @Nullable Set<String> dirtyPaths) throws IOException {
+        log.info(String.format("Synchronize plugin folder '%s'", file.path));
+
+        if (trackedFile == null) {
+            // Create folder
+            log.info(" - Creating folder: it has been added remotely since last synchronization.");
+            File directory = writeBatch.getOrCreateDirectory(localDir.getParentFile(), file.name);
+            updateFileMetadata(monitoredFS, file.path, 0, null);
+            synchronizeFolder(dssClient, monitoredFS, writeBatch, file.path, directory, localFile, file.children, dirtyPaths);
+        } else if (localFile != null && localFile.exists()) {
+            synchronizeFolder(dssClient, monitoredFS, writeBatch, file.path, localDir, localFile, file.children, dirtyPaths);
+        } else {
+            // Directory has been locally deleted since last synchronization.
+            deleteFile(dssClient, monitoredFS, monitoredFS.fsMetadata.id, file);
+        }
+    }
 
-                if (trackedFile == null) {
-                    // Create folder
-                    log.info(" - Creating folder: it has been added remotely since last synchronization.");
-                    VirtualFile virtualFile = vFileManager.getOrCreateVirtualDirectory(parent, file.name);
-                    updateFileMetadata(monitoredFS, file.path, 0, null);
+    /**
+     * Synchronizes a regular file present in DSS.
+     */
+    private void synchronizeRemoteFile(DSSClient dssClient, MonitoredFileSystem monitoredFS, WriteBatch writeBatch, File localFile, FolderContent file, @Nullable VirtualFile virtualFile, @Nullable DssFileMetadata trackedFile) throws IOException {
+        log.info(String.format("Synchronize file '%s'", file.path));
+        metrics.fileScanned();
+
+        if (trackedFile == null) {
+            try (RemoteContent fileContent = downloadFile(dssClient, monitoredFS, file)) {
+                log.info(" - Creating file: it has been added remotely since last synchronization.");
+                fileContent.writeTo(writeBatch, localFile, UTF_8);
+                updateFileMetadata(monitoredFS, file.path, fileContent.contentHash, fileContent, file);
+            }
+            summary.locallyUpdated.add(String.format("File '%s' downloaded from DSS instance.", file.path));
+            return;
+        }
+        if (virtualFile == null || !virtualFile.exists()) {
+            // File locally deleted.
+            deleteFile(dssClient, monitoredFS, monitoredFS.fsMetadata.id, file);
+            return;
+        }
 
-                    if (file.children != null && !file.children.isEmpty()) {
-                        synchronizeFolder(dssClient, monitoredFS, virtualFile, file.children);
-                    }
+        long localHash = getLocalContentHash(monitoredFS, trackedFile, virtualFile);
+        long originalHash = trackedFile.contentHash;
+        boolean remotelyUnchanged = isRemotelyUnchanged(trackedFile, file);
+        if (remotelyUnchanged) {
+            log.info(" - Remote file has the same size and modification date as during last synchronization.");
+        }
+        // Only downloaded if the remote file may have changed
+        try (RemoteContent fileContent = remotelyUnchanged ? null : downloadFile(dssClient, monitoredFS, file)) {
+            long remoteHash = fileContent == null ? originalHash : fileContent.contentHash;
+            if (remoteHash == originalHash) {
+                // No change on remote server since last synchronization.
+                if (localHash != originalHash) {
+                    // File locally modified => Upload it to DSS
+                    log.info(" - Uploading file. It has been locally modified and left untouched remotely since last synchronization.");
+                    uploadFile(dssClient, monitoredFS, file.path, localFile, localHash);
+                    summary.dssUpdated.add(String.format("File '%s' saved into DSS instance.", file.path));
                 } else {
-                    VirtualFile virtualFile = VirtualFileManager.getVirtualFile(parent, file.name);
-                    if (virtualFile != null && virtualFile.exists() && virtualFile.isValid()) {
-                        // Recurse if necessary
-                        if (file.children != null && !file.children.isEmpty()) {
-                            synchronizeFolder(dssClient, monitoredFS, virtualFile, file.children);
+                    // All files are identical, nothing to do.
+                    log.info(" - Files are identical.");
+                    if (fileContent != null) {
+                        // Remember the remote state, so that the file is not downloaded again next time.
+                        synchronized (monitoredFS.metadataFile) {
+                            trackedFile.remoteSize = file.size;
+                            trackedFile.remoteLastModified = file.lastModified;
                         }
-                    } else {
-                        // Directory has been locally deleted since last synchronization.
-                        deleteFile(dssClient, monitoredFS, pluginId, file);
-
+                        dirtyMetadataFiles.add(monitoredFS.metadataFile);
                     }
                 }
-
             } else {
-                // Regular file
-                log.info(String.format("Synchronize file '%s'", file.path));
-
-                byte[] fileContent;
-                if (monitoredFS instanceof MonitoredPlugin) {
-                    fileContent = file.size == 0 ? new byte[0] : dssClient.downloadPluginFile(pluginId, file.path);
+                // Changed on remote server since last synchronization
+                if (remoteHash == localHash) {
+                    // Both files have been changed in the same way. Just update the metadata on our side.
+                    log.info(" - Updated identically both locally and remotely since last synchronization.");
+                    updateFileMetadata(monitoredFS, file.path, remoteHash, fileContent, file);
+                } else if (localHash == originalHash) {
+                    // File has not been modified locally, retrieve the remote version.
+                    log.info(" - Updating local file. It has been updated remotely but not locally.");
+                    fileContent.writeTo(writeBatch, localFile, null);
+                    updateFileMetadata(monitoredFS, file.path, remoteHash, fileContent, file);
+                    summary.locallyUpdated.add(String.format("File '%s' updated with latest version from DSS instance.", file.path));
                 } else {
-                    String fileContentString = file.size == 0 ? "" : dssClient.downloadLibraryFile(pluginId, file.path).data;
-                    // Converting back to bytes to factorize code with plugins
-                    if (fileContentString==null || "".equals(fileContentString)) {
-                        fileContent = new byte[0];
+                    // Conflict!! Checkout remote file as .remote and send the local version to DSS
+                    log.warn(" - Conflict detected. Marking this file for future resolution.");
+                    byte[] content = VirtualFileManager.readVirtualFileAsByteArray(virtualFile);
+                    if (monitoredFS instanceof MonitoredPlugin) {
+                        MonitoredPluginFileConflict conflict = new MonitoredPluginFileConflict(virtualFile, (MonitoredPlugin) monitoredFS, new DssPluginFileMetadata(trackedFile.instance, trackedFile.id, trackedFile.path, trackedFile.remotePath, trackedFile.contentHash, trackedFile.dataBlobId));
+                        conflict.localData = content;
+                        conflict.remoteData = fileContent.read();
+                        conflict.originalData = monitoredFS.metadataFile.readDataBlob(trackedFile.dataBlobId);
+                        summary.fileConflicts.add(conflict);
                     } else {
-                        fileContent = fileContentString.getBytes(UTF_8);
+                        MonitoredLibraryFileConflict conflict = new MonitoredLibraryFileConflict(virtualFile, (MonitoredLibrary) monitoredFS, new DssLibraryFileMetadata(trackedFile.instance, trackedFile.id, trackedFile.path, trackedFile.remotePath, trackedFile.contentHash, trackedFile.dataBlobId));
+                        conflict.localData = content;
+                        conflict.remoteData = fileContent.read();
+                        conflict.originalData = monitoredFS.metadataFile.readDataBlob(trackedFile.dataBlobId);
+                        summary.fileConflicts.add(conflict);
                     }
+                    summary.conflicts.add(String.format("File '%s' has been modified both locally and remotely..", file.path));
                 }
+            }
+        }
+    }
 
-                if (trackedFile == null) {
-                    log.info(" - Creating file: it has been added remotely since last synchronization.");
-                    VirtualFile virtualFile = vFileManager.getOrCreateVirtualFile(parent, file.name);
-                    vFileManager.writeToVirtualFile(virtualFile, fileContent, UTF_8);
-                    updateFileMetadata(monitoredFS, file.path, getContentHash(fileContent), fileContent);
-                    summary.locallyUpdated.add(String.format("File '%s' downloaded from DSS instance.", file.path));
-                } else {
-                    VirtualFile virtualFile = VirtualFileManager.getVirtualFile(parent, file.name);
-                    if (virtualFile == null || !virtualFile.exists() || !virtualFile.isValid()) {
-                        // File locally deleted.
-                        deleteFile(dssClient, monitoredFS, pluginId, file);
-                    } else {
-                        int localHash = getContentHash(virtualFile);
-                        int originalHash = trackedFile.contentHash;
-                        int remoteHash = getContentHash(fileContent);
-                        if (remoteHash == originalHash) {
-                            // No change on remote server since last synchronization.
-                            if (localHash != originalHash) {
-                                // File locally modified => Upload it to DSS
-                                log.info(" - Uploading file. It has been locally modified and left untouched remotely since last synchronization.");
-                                byte[] content = VirtualFileManager.readVirtualFileAsByteArray(virtualFile);
-                                if (monitoredFS instanceof MonitoredPlugin) {
-                                    dssClient.uploadPluginFile(pluginId, file.path, content);
-                                } else {
-                                    dssClient.uploadLibraryFile(pluginId, file.path, content);
-                                }
-                                updateFileMetadata(monitoredFS, file.path, localHash, content);
-                                summary.dssUpdated.add(String.format("File '%s' saved into DSS instance.", file.path));
-                            } else {
-                                // All files are identical, nothing to do.
-                                log.info(" - Files are identical.");
-                            }
-                        } else {
-                            // Changed on remote server since last synchronization
-                            if (remoteHash == localHash) {
-                                // Both files have been changed in the same way. Just update the metadata on our side.
-                                log.info(" - Updated identically both locally and remotely since last synchronization.");
-                                updateFileMetadata(monitoredFS, file.path, remoteHash, fileContent);
-                            } else if (localHash == originalHash) {
-                                // File has not been modified locally, retrieve the remote version.
-                                log.info(" - Updating local file. It has been updated remotely but not locally.");
-                                vFileManager.writeToVirtualFile(virtualFile, fileContent, null);
-                                updateFileMetadata(monitoredFS, file.path, remoteHash, fileContent);
-                                summary.locallyUpdated.add(String.format("File '%s' updated with latest version from DSS instance.", file.path));
-                            } else {
-                                // Conflict!! Checkout remote file as .remote and send the local version to DSS
-                                log.warn(" - Conflict detected. Marking this file for future resolution.");
-                                byte[] content = VirtualFileManager.readVirtualFileAsByteArray(virtualFile);
-                                if (monitoredFS instanceof MonitoredPlugin) {
-                                    MonitoredPluginFileConflict conflict = new MonitoredPluginFileConflict(virtualFile, (MonitoredPlugin) monitoredFS, new DssPluginFileMetadata(trackedFile.instance, trackedFile.id, trackedFile.path, trackedFile.remotePath, trackedFile.contentHash, trackedFile.dataBlobId));
-                                    conflict.localData = content;
-                                    conflict.remoteData = fileContent;
-                                    conflict.originalData = monitoredFS.metadataFile.readDataBlob(trackedFile.dataBlobId);
-                                    summary.fileConflicts.add(conflict);
-                                } else {
-                                    MonitoredLibraryFileConflict conflict = new MonitoredLibraryFileConflict(virtualFile, (MonitoredLibrary) monitoredFS, new DssLibraryFileMetadata(trackedFile.instance, trackedFile.id, trackedFile.path, trackedFile.remotePath, trackedFile.contentHash, trackedFile.dataBlobId));
-                                    conflict.localData = content;
-                                    conflict.remoteData = fileContent;
-                                    conflict.originalData = monitoredFS.metadataFile.readDataBlob(trackedFile.dataBlobId);
-                                    summary.fileConflicts.add(conflict);
-                                }
-                                summary.conflicts.add(String.format("File '%s' has been modified both locally and remotely..", file.path));
-                            }
-                        }
-                    }
-                }
+    /**
+     * Synchronizes a local folder absent from DSS: either added locally, or removed from DSS.
+     */
+    private void synchronizeLocalFolder(DSSClient dssClient, MonitoredFileSystem monitoredFS, WriteBatch writeBatch, String path, File localDir, VirtualFile folder, @Nullable DssFileMetadata trackedFile, @Nullable Set<String> dirtyPaths) throws IOException {
+        if (trackedFile == null) {
+            // Newly added => sent it to DSS
+            log.info(String.format("Uploading locally added directory '%s' (path=%s)", folder.getName(), path));
+            if (monitoredFS instanceof MonitoredPlugin) {
+                dssClient.createPluginFolder(monitoredFS.fsMetadata.id, path);
+            } else {
+                dssClient.createLibraryFolder(monitoredFS.fsMetadata.id, path);
             }
+            summary.dssUpdated.add(String.format("Directory '%s' created into DSS instance.", path));
+            updateFileMetadata(monitoredFS, path, 0, null);
+            synchronizeFolder(dssClient, monitoredFS, writeBatch, path, localDir, folder, null, dirtyPaths);
+        } else {
+            // Deal with the content first, so that the folder can be deleted if nothing is left in it.
+            synchronizeFolder(dssClient, monitoredFS, writeBatch, path, localDir, folder, null, dirtyPaths);
+            // Files added locally have been uploaded (and are now tracked) by then, the folder is kept with them.
+            VirtualFile[] children = folder.getChildren();
+            if (children == null || children.length == 0) {
+                vFileManager.deleteVirtualFile(folder);
+                summary.locallyDeleted.add(String.format("Plugin directory '%s' locally deleted because it has been removed from DSS instance.", path));
+                removeFileMetadata(monitoredFS, path);
+            }
+        }
+    }
+
+    /**
+     * Synchronizes a local regular file absent from DSS: either added locally, or removed from DSS.
+     */
+    private void synchronizeLocalFile(DSSClient dssClient, MonitoredFileSystem monitoredFS, String path, File localFile, VirtualFile file, @Nullable DssFileMetadata trackedFile) throws IOException {
+        metrics.fileScanned();
+        if (trackedFile == null) {
+            // Newly added => sent it to DSS
+            log.info(String.format("Uploading locally added file '%s' (path=%s)", file.getName(), path));
+            metrics.fileHashed();
+            uploadFile(dssClient, monitoredFS, path, localFile, getContentHash(file));
+            summary.dssUpdated.add(String.format("File '%s' uploaded to DSS instance.", path));
+        } else {
+            // Has been modified locally?
+            if (getLocalContentHash(monitoredFS, trackedFile, file) != trackedFile.contentHash) {
+                // Rename the file into ".deleted" and stop tracking it.
+                String newName = findNonExistingFilename(file, file.getName() + DELETED_SUFFIX);
+                vFileManager.renameVirtualFile(file, newName);
+                summary.conflicts.add(String.format("File '%s' has been removed from DSS instance but modified locally. Local copy has been renamed into '%s'.", path, newName));
+            } else {
+                // No, delete the file locally
+                vFileManager.deleteVirtualFile(file);
+                summary.locallyDeleted.add(String.format("File '%s' locally deleted because it has been removed from DSS instance.", path));
+            }
+            removeFileMetadata(monitoredFS, path);
         }
     }
 
+    /**
+     * Returns the content hash of a tracked local file. The file is not read if it has the same size and modification date as when its
+     * content was last found to match the tracked one. Both are taken from the VFS, like the content (and its cached hash), so that an
+     * external change not refreshed yet by the VFS is not recorded as matching the old content.
+     */
+    private long getLocalContentHash(MonitoredFileSystem monitoredFS, DssFileMetadata trackedFile, VirtualFile virtualFile) throws IOException {
+        // Read before the content, so that a modification made while reading it is detected next time.
+        long size = virtualFile.getLength();
+        long lastModified = virtualFile.getTimeStamp();
+        if (lastModified > 0 && lastModified == trackedFile.localLastModified && size == trackedFile.localSize) {
+            return trackedFile.contentHash;
+        }
+        long contentHash = getContentHash(virtualFile);
+        metrics.fileHashed();
+        // A file modified very recently could be modified again without its modification date changing, so its state is not trusted yet.
+        if (contentHash == trackedFile.contentHash && System.currentTimeMillis() - lastModified > VirtualFileManager.MIN_TRUSTED_TIMESTAMP_AGE_MS) {
+            synchronized (monitoredFS.metadataFile) {
+                trackedFile.localSize = size;
+                trackedFile.localLastModified = lastModified;
+            }
+            dirtyMetadataFiles.add(monitoredFS.metadataFile);
+        }
+        return contentHash;
+    }
 
     private void deleteFile(DSSClient dssClient, MonitoredFileSystem monitoredFS, String id, FolderContent file) throws DssException {
-        List<FolderContent> children = file.children;
-        if (children != null) {
-            for (FolderContent child : children) {
-                deleteFile(dssClient, monitoredFS, id, child);
+        if (isFolder(file)) {
+            log.info(String.format("Deleting directory '%s' from '%s'", file.path, id));
+            if (monitoredFS instanceof MonitoredPlugin) {
+                dssClient.deletePluginFolder(id, file);
+            } else {
+                dssClient.deleteLibraryFolder(id, file);
             }
+            removeFolderMetadata(monitoredFS, file.path);
+            summary.dssDeleted.add(String.format("Directory '%s' deleted from DSS instance.", file.path));
+        } else {
+            log.info(String.format("Deleting file '%s' from '%s'", file.path, id));
+            if (monitoredFS instanceof MonitoredPlugin) {
+                dssClient.deletePluginFile(id, file.path);
+            } else {
+                dssClient.deleteLibraryFile(id, file.path);
+            }
+            removeFileMetadata(monitoredFS, file.path);
+            summary.dssDeleted.add(String.format("File '%s' deleted from DSS instance.", file.path));
         }
-        log.info(String.format("Deleting file '%s' from '%s'", file.path, id));
+    }
+
+    /**
+     * Uploads a local file, streamed from disk, and tracks it with the given content hash.
+     */
+    private void uploadFile(DSSClient dssClient, MonitoredFileSystem monitoredFS, String path, File localFile, long contentHash) throws IOException {
+        long start = System.nanoTime();
         if (monitoredFS instanceof MonitoredPlugin) {
-            dssClient.deletePluginFile(id, file.path);
+            dssClient.uploadPluginFile(monitoredFS.fsMetadata.id, path, localFile);
         } else {
-            dssClient.deleteLibraryFile(id, file.path);
+            dssClient.uploadLibraryFile(monitoredFS.fsMetadata.id, path, localFile);
         }
-        monitoredFS.removeFile(file.path);
-        dirtyMetadataFiles.add(monitoredFS.metadataFile);
-        summary.dssDeleted.add(String.format("File '%s' deleted from DSS instance.", file.path));
+        metrics.phaseCompleted(Phase.UPLOADS, start);
+        metrics.fileUploaded();
+        String dataBlobId = monitoredFS.metadataFile.writeDataBlob(localFile);
+        updateFileMetadata(monitoredFS, path, contentHash, null, dataBlobId, null);
+    }
+
+    private RemoteContent downloadFile(DSSClient dssClient, MonitoredFileSystem monitoredFS, FolderContent file) throws IOException {
+        String id = monitoredFS.fsMetadata.id;
+        RemoteContent content = new RemoteContent();
+        long start = System.nanoTime();
+        try {
+            if (file.size == 0) {
+                content.contentHash = getContentHash(new byte[0]);
+            } else if (monitoredFS instanceof MonitoredPlugin) {
+                content.contentHash = dssClient.downloadPluginFile(id, file.path, content::write);
+            } else {
+                content.contentHash = dssClient.downloadLibraryFile(id, file.path, content::write);
+            }
+            metrics.phaseCompleted(Phase.DOWNLOADS, start);
+            metrics.fileDownloaded();
+            return content;
+        } catch (IOException | RuntimeException e) {
+            content.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the listing shows that the remote file has not changed since it was last synchronized, in which case there is no
+     * need to download it to compare its content hash. Requires DSS to return the modification date of files when listing them.
+     */
+    private boolean isRemotelyUnchanged(DssFileMetadata trackedFile, FolderContent remoteFile) {
+        return settings.isDetectRemoteChangesFromListingEnabled()
+                && remoteFile.lastModified > 0
+                && remoteFile.lastModified == trackedFile.remoteLastModified
+                && remoteFile.size == trackedFile.remoteSize;
+    }
+
+    private void updateFileMetadata(MonitoredFileSystem monitoredFS, String path, long contentHash, byte[] content) throws IOException {
+        updateFileMetadata(monitoredFS, path, contentHash, content, null, null);
+    }
+
+    private void updateFileMetadata(MonitoredFileSystem monitoredFS, String path, long contentHash, RemoteContent content, FolderContent remoteFile) throws IOException {
+        updateFileMetadata(monitoredFS, path, contentHash, null, monitoredFS.metadataFile.writeDataBlob(content.file), remoteFile);
     }
 
-    private void updateFileMetadata(MonitoredFileSystem monitoredFS, String path, int contentHash, byte[] content) throws IOException {
+    private void updateFileMetadata(MonitoredFileSystem monitoredFS, String path, long contentHash, byte[] content, String dataBlobId, FolderContent remoteFile) throws IOException {
         String id = monitoredFS.fsMetadata.id;
 
         if (monitoredFS instanceof MonitoredPlugin) {
@@ -423,7 +788,9 @@ public class SynchronizeWorker {
                     id + "/" + path,
                     path,
                     contentHash,
-                    content);
+                    dataBlobId);
+            fileMetadata.data = content;
+            setRemoteState(fileMetadata, remoteFile);
             monitoredFS.metadataFile.addOrUpdatePluginFile(fileMetadata, false);
         } else {
             DssLibraryFileMetadata fileMetadata = new DssLibraryFileMetadata(
@@ -432,17 +799,31 @@ public class SynchronizeWorker {
                     id + "/" + LIB_BASE_FOLDER + "/" + path,
                     path,
                     contentHash,
-                    content);
+                    dataBlobId);
+            fileMetadata.data = content;
+            setRemoteState(fileMetadata, remoteFile);
             monitoredFS.metadataFile.addOrUpdateLibraryFile(fileMetadata, false);
         }
         dirtyMetadataFiles.add(monitoredFS.metadataFile);
     }
 
+    private static void setRemoteState(DssFileMetadata fileMetadata, FolderContent remoteFile) {
+        if (remoteFile != null) {
+            fileMetadata.remoteSize = remoteFile.size;
+            fileMetadata.remoteLastModified = remoteFile.lastModified;
+        }
+    }
+
     private void removeFileMetadata(MonitoredFileSystem monitoredFS, String path) {
-        DssFileSystemMetadata fsMetadata = monitoredFS.fsMetadata;
-        DssFileMetadata fileMetadata = fsMetadata.findFile(path);
-        if (fileMetadata != null) {
-            fsMetadata.files.remove(fileMetadata);
+        synchronized (monitoredFS.metadataFile) {
+            monitoredFS.removeFile(path);
+        }
+        dirtyMetadataFiles.add(monitoredFS.metadataFile);
+    }
+
+    private void removeFolderMetadata(MonitoredFileSystem monitoredFS, String path) {
+        synchronized (monitoredFS.metadataFile) {
+            monitoredFS.fsMetadata.removeFileAndChildren(path);
         }
         dirtyMetadataFiles.add(monitoredFS.metadataFile);
     }
@@ -475,6 +856,41 @@ public class SynchronizeWorker {
         return newName + "(" + index + ")";
     }
 
+    /**
+     * Content of a remote file, downloaded into a temporary file so that large files are never held in memory.
+     */
+    private static class RemoteContent implements AutoCloseable {
+        private final File file;
+        private long contentHash;
+
+        RemoteContent() throws IOException {
+            file = File.createTempFile("dss-download", null);
+        }
+
+        long write(InputStream content) throws IOException {
+            HashingInputStream hashingContent = VirtualFileManager.hashContent(content);
+            Files.copy(hashingContent, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return hashingContent.hash().asLong();
+        }
+
+        void writeTo(WriteBatch writeBatch, File localFile, @Nullable Charset charset) throws IOException {
+            try (InputStream in = new FileInputStream(file)) {
+                writeBatch.writeFile(localFile, in, charset);
+            }
+        }
+
+        byte[] read() throws IOException {
+            return Files.readAllBytes(file.toPath());
+        }
+
+        @Override
+        public void close() {
+            if (file.exists() && !file.delete()) {
+                log.info("Unable to delete temporary file: " + file);
+            }
+        }
+    }
+
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private static boolean ignoreFile(String fileName) {
         return fileName.endsWith(DELETED_SUFFIX) || fileName.endsWith(PYC_SUFFIX) || fileName.endsWith(CLASS_SUFFIX);
@@ -5,8 +5,10 @@ import com.dataiku.dss.intellij.*;
 import com.dataiku.dss.intellij.actions.checkout.CheckoutModel.ItemType;
 import com.dataiku.dss.intellij.config.DssInstance;
 import com.dataiku.dss.intellij.config.DssSettings;
+import com.dataiku.dss.intellij.utils.ArchiveUtils;
 import com.dataiku.dss.intellij.utils.RecipeUtils;
 import com.dataiku.dss.intellij.utils.VirtualFileManager;
+import com.dataiku.dss.intellij.utils.VirtualFileManager.WriteBatch;
 import com.dataiku.dss.model.DSSClient;
 import com.dataiku.dss.model.dss.FolderContent;
 import com.dataiku.dss.model.dss.Plugin;
@@ -16,16 +18,26 @@ import com.dataiku.dss.model.metadata.*;
 import com.dataiku.dss.wt1.WT1;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.fileEditor.impl.NonProjectFileWritingAccessProvider;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.dataiku.dss.intellij.utils.LibraryUtils.LIB_BASE_FOLDER;
@@ -34,6 +46,7 @@ import static com.google.common.base.Charsets.UTF_8;
 
 public class CheckoutWorker {
     private static final Logger log = Logger.getInstance(CheckoutWorker.class);
+    private static final int MAX_PARALLEL_DOWNLOADS = 4; // All files of a checkout come from the same DSS instance
 
     private final DssSettings dssSettings;
     private final WT1 wt1;
@@ -130,7 +143,7 @@ public class CheckoutWorker {
         DSSClient dssClient = model.serverClient;
         VirtualFile moduleRootFolder = getModuleRootFolder(ModuleRootManager.getInstance(model.module));
         MetadataFile metadata = MetadataFilesIndex.getInstance().getOrCreateMetadata(moduleRootFolder);
-        List<VirtualFile> createdFileList = new ArrayList<>();
+        List<VirtualFile> createdFileList;
 
         // Track library
         DssLibraryMetadata libraryMetadata = new DssLibraryMetadata(model.server.id, projectKey, projectKey + "/" + LIB_BASE_FOLDER + "/");
@@ -139,7 +152,10 @@ public class CheckoutWorker {
         // Checkout library files
         List<FolderContent> folderContents = dssClient.listLibraryFiles(projectKey);
 
-        checkoutFolder(libraryMetadata, projectKey, projectKey + "/" + LIB_BASE_FOLDER, createdFileList, folder, folderContents);
+        try (FolderCheckout folderCheckout = new FolderCheckout(metadata)) {
+            folderCheckout.checkout(libraryMetadata, projectKey, projectKey + "/" + LIB_BASE_FOLDER, WriteBatch.toIoFile(folder), folderContents);
+            createdFileList = folderCheckout.complete();
+        }
 
         metadata.addOrUpdateLibrary(libraryMetadata);
 
@@ -161,23 +177,35 @@ public class CheckoutWorker {
 
         MetadataFile metadata = MetadataFilesIndex.getInstance().getOrCreateMetadata(moduleRootFolder);
 
-        List<VirtualFile> createdFileList = new ArrayList<>();
+        List<VirtualFile> createdFileList;
         List<Plugin> plugins = model.plugins;
-        for (Plugin plugin : plugins) {
-            // Track plugin
-            DssPluginMetadata pluginMetadata = new DssPluginMetadata(model.server.id, plugin.id, plugin.id);
-
-            // Create folder for plugin
-            VirtualFile folder = vFileManager.getOrCreateVirtualDirectory(moduleRootFolder, plugin.id);
-
-            // Checkout plugin files
-            List<FolderContent> folderContents = dssClient.listPluginFiles(plugin.id);
-            checkoutFolder(pluginMetadata, plugin.id, plugin.id, createdFileList, folder, folderContents);
+        List<DssPluginMetadata> pluginMetadatas = new ArrayList<>();
+        List<VirtualFile> pluginFolders = new ArrayList<>();
+        // The files of all plugins are downloaded in the same pipeline, and the plugins are tracked once they are all checked out.
+        try (FolderCheckout folderCheckout = new FolderCheckout(metadata)) {
+            for (Plugin plugin : plugins) {
+                // Track plugin
+                DssPluginMetadata pluginMetadata = new DssPluginMetadata(model.server.id, plugin.id, plugin.id);
+
+                // Create folder for plugin
+                VirtualFile folder = vFileManager.getOrCreateVirtualDirectory(moduleRootFolder, plugin.id);
+
+                // Checkout plugin files
+                List<FolderContent> folderContents = dssClient.listPluginFiles(plugin.id);
+                folderCheckout.checkout(pluginMetadata, plugin.id, plugin.id, WriteBatch.toIoFile(folder), folderContents);
+
+                pluginMetadatas.add(pluginMetadata);
+                pluginFolders.add(folder);
+            }
+            createdFileList = folderCheckout.complete();
+        }
 
+        for (int i = 0; i < pluginMetadatas.size(); i++) {
+            DssPluginMetadata pluginMetadata = pluginMetadatas.get(i);
             metadata.addOrUpdatePlugin(pluginMetadata);
 
             // Monitor the plugin directory so that any further change in this directory is synchronized with DSS.
-            MonitoredFilesIndex.getInstance().index(new MonitoredPlugin(folder, metadata, pluginMetadata));
+            MonitoredFilesIndex.getInstance().index(new MonitoredPlugin(pluginFolders.get(i), metadata, pluginMetadata));
         }
 
         NonProjectFileWritingAccessProvider.allowWriting(createdFileList);
@@ -186,62 +214,183 @@ public class CheckoutWorker {
     }
 
 
-    private void checkoutFolder(DssFileSystemMetadata metadata, String id, String localBaseDir, List<VirtualFile> createdFileList, VirtualFile parent, List<FolderContent> folderContents) throws IOException {
-        for (FolderContent remoteFile : folderContents) {
-            if (remoteFile.mimeType == null || "null".equals(remoteFile.mimeType)) {
-                // Folder
-                log.info(String.format("Checkout folder '%s' (path=%s)", remoteFile.name, remoteFile.path));
+    /**
+     * Checks out the files of plugins or libraries. When DSS supports it, each plugin or library is downloaded as a single zip archive that is
+     * unpacked while being received. Otherwise (and for the files missing from the archive), folders are created by the calling thread while
+     * walking the remote listing, whereas files are downloaded by a pool of threads (at most {@link #MAX_PARALLEL_DOWNLOADS} downloads in
+     * flight against the DSS instance) and streamed to disk, into the write batch. The metadata of each file is built as soon as it has been written, and added to its plugin or library in
+     * the order of the listing once all downloads are complete.
+     */
+    private class FolderCheckout implements AutoCloseable {
+        private final MetadataFile metadataFile;
+        private final WriteBatch writeBatch = vFileManager.startWriteBatch(); // Written files are made visible in the IDE at once
+        private final ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_DOWNLOADS,
+                new ThreadFactoryBuilder().setNameFormat("DSS checkout %d").setDaemon(true).build());
+        private final List<FileDownload> downloads = new ArrayList<>();
+        private boolean committed = false;
+
+        FolderCheckout(MetadataFile metadataFile) {
+            this.metadataFile = metadataFile;
+        }
 
-                // Create folder
-                VirtualFile localFile = vFileManager.getOrCreateVirtualDirectory(parent, remoteFile.name);
+        void checkout(DssFileSystemMetadata metadata, String id, String localBaseDir, File baseDir, List<FolderContent> folderContents) throws IOException {
+            Map<String, FolderContent> listedFiles = new HashMap<>();
+            indexFiles(listedFiles, folderContents);
+            Map<String, DssFileMetadata> unpackedFiles = new HashMap<>();
+            if (!listedFiles.isEmpty()) {
+                DSSClient.ContentReader<?> reader = archive -> {
+                    ArchiveUtils.unpack(archive, writeBatch, baseDir, listedFiles::containsKey, (path, localFile, contentHash) ->
+                            unpackedFiles.put(path, newFileMetadata(id, localBaseDir, localFile, listedFiles.get(path), contentHash)));
+                    return null;
+                };
+                boolean downloaded = metadata instanceof DssPluginMetadata
+                        ? model.serverClient.downloadPluginArchive(id, reader)
+                        : model.serverClient.downloadLibraryArchive(id, reader);
+                if (downloaded) {
+                    log.info(String.format("Checked out %d of %d files of '%s' from archive", unpackedFiles.size(), listedFiles.size(), id));
+                }
+            }
+            checkoutFolder(metadata, id, localBaseDir, baseDir, folderContents, unpackedFiles);
+        }
 
-                // Write metadata
-                metadata.files.add(new DssFileMetadata(
-                        model.server.id,
-                        id,
-                        localBaseDir + "/" + remoteFile.path,
-                        remoteFile.path,
-                        0,
-                        (byte[]) null));
+        private void checkoutFolder(DssFileSystemMetadata metadata, String id, String localBaseDir, File parent, List<FolderContent> folderContents, Map<String, DssFileMetadata> unpackedFiles) throws IOException {
+            for (FolderContent remoteFile : folderContents) {
+                if (remoteFile.mimeType == null || "null".equals(remoteFile.mimeType)) {
+                    // Folder
+                    log.info(String.format("Checkout folder '%s' (path=%s)", remoteFile.name, remoteFile.path));
+
+                    // Create folder
+                    File localFile = writeBatch.getOrCreateDirectory(parent, remoteFile.name);
+
+                    // Write metadata
+                    metadata.addOrUpdateFile(new DssFileMetadata(
+                            model.server.id,
+                            id,
+                            localBaseDir + "/" + remoteFile.path,
+                            remoteFile.path,
+                            0,
+                            (byte[]) null));
+
+                    // Recurse if necessary
+                    if (remoteFile.children != null && !remoteFile.children.isEmpty()) {
+                        checkoutFolder(metadata, id, localBaseDir, localFile, remoteFile.children, unpackedFiles);
+                    }
+                } else {
+                    // Regular file
+                    File localFile = new File(parent, remoteFile.name);
+                    DssFileMetadata unpackedFile = unpackedFiles.get(remoteFile.path);
+                    Future<DssFileMetadata> future = unpackedFile != null
+                            ? Futures.immediateFuture(unpackedFile)
+                            : executor.submit(() -> checkoutFile(id, localBaseDir, localFile, remoteFile, metadata instanceof DssPluginMetadata));
+                    downloads.add(new FileDownload(metadata, localFile, future));
+                }
+            }
+        }
+
+        /**
+         * Waits for all downloads to complete, then registers the metadata of the downloaded files.
+         *
+         * @return the files that have been written.
+         */
+        List<VirtualFile> complete() throws IOException {
+            try {
+                for (FileDownload download : downloads) {
+                    download.metadata.addOrUpdateFile(download.future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Checkout has been interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("Unexpected error while checking out files from DSS", cause);
+            } finally {
+                close();
+            }
 
-                // Recurse if necessary
-                if (remoteFile.children != null && !remoteFile.children.isEmpty()) {
-                    checkoutFolder(metadata, id, localBaseDir, createdFileList, localFile, remoteFile.children);
+            List<VirtualFile> result = new ArrayList<>();
+            for (FileDownload download : downloads) {
+                VirtualFile file = WriteBatch.findVirtualFile(download.localFile);
+                if (file != null) {
+                    result.add(file);
                 }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Downloads still in flight are only possible if the checkout failed.
+            executor.shutdownNow();
+            if (!committed) {
+                committed = true;
+                writeBatch.commit();
+            }
+        }
+
+        private DssFileMetadata checkoutFile(String id, String localBaseDir, File localFile, FolderContent remoteFile, boolean pluginFile) throws IOException {
+            log.info(String.format("Checkout file '%s' (path=%s)", remoteFile.name, remoteFile.path));
+
+            long contentHash;
+            if (remoteFile.size == 0) {
+                byte[] fileContent = new byte[0];
+                writeBatch.writeFile(localFile, fileContent, UTF_8);
+                contentHash = getContentHash(fileContent);
             } else {
-                // Regular file
-                log.info(String.format("Checkout file '%s' (path=%s)", remoteFile.name, remoteFile.path));
+                DSSClient.ContentReader<Long> fileWriter = content -> {
+                    HashingInputStream hashingContent = VirtualFileManager.hashContent(content);
+                    writeBatch.writeFile(localFile, hashingContent, UTF_8);
+                    return hashingContent.hash().asLong();
+                };
+                contentHash = pluginFile
+                        ? model.serverClient.downloadPluginFile(id, remoteFile.path, fileWriter)
+                        : model.serverClient.downloadLibraryFile(id, remoteFile.path, fileWriter);
+            }
+            return newFileMetadata(id, localBaseDir, localFile, remoteFile, contentHash);
+        }
 
-                VirtualFile localFile = vFileManager.getOrCreateVirtualFile(parent, remoteFile.name);
+        private DssFileMetadata newFileMetadata(String id, String localBaseDir, File localFile, FolderContent remoteFile, long contentHash) throws IOException {
+            // The original content is kept in a data-blob, read back from the written file (not in the project until the batch is committed).
+            DssFileMetadata fileMetadata = new DssFileMetadata(
+                    model.server.id,
+                    id,
+                    localBaseDir + "/" + remoteFile.path,
+                    remoteFile.path,
+                    contentHash,
+                    metadataFile.writeDataBlob(writeBatch.getWrittenContent(localFile)));
+            fileMetadata.remoteSize = remoteFile.size;
+            fileMetadata.remoteLastModified = remoteFile.lastModified;
+            return fileMetadata;
+        }
+    }
 
-                byte[] fileContent;
-                if (metadata instanceof DssPluginMetadata) {
-                    fileContent = remoteFile.size == 0 ? new byte[0] : model.serverClient.downloadPluginFile(id, remoteFile.path);
-                } else {
-                    String fileContentString = remoteFile.size == 0 ? "" : model.serverClient.downloadLibraryFile(id, remoteFile.path).data;
-                    // Converting back to bytes to factorize code with plugins
-                    if (Strings.isNullOrEmpty(fileContentString)) {
-                        fileContent = new byte[0];
-                    } else {
-                        fileContent = fileContentString.getBytes(UTF_8);
-                    }
+    private static void indexFiles(Map<String, FolderContent> index, List<FolderContent> folderContents) {
+        for (FolderContent folderContent : folderContents) {
+            if (folderContent.mimeType == null || "null".equals(folderContent.mimeType)) {
+                if (folderContent.children != null) {
+                    indexFiles(index, folderContent.children);
                 }
-
-                vFileManager.writeToVirtualFile(localFile, fileContent, UTF_8);
-                // Write metadata
-                metadata.files.add(new DssFileMetadata(
-                        model.server.id,
-                        id,
-                        localBaseDir + "/" + remoteFile.path,
-                        remoteFile.path,
-                        getContentHash(fileContent),
-                        fileContent));
-
-                createdFileList.add(localFile);
+            } else {
+                index.put(folderContent.path, folderContent);
             }
         }
     }
 
+    private static class FileDownload {
+        private final DssFileSystemMetadata metadata;
+        private final File localFile;
+        private final Future<DssFileMetadata> future;
+
+        FileDownload(DssFileSystemMetadata metadata, File localFile, Future<DssFileMetadata> future) {
+            this.metadata = metadata;
+            this.localFile = localFile;
+            this.future = future;
+        }
+    }
 
     private static String getFilename(Recipe recipe) {
         return recipe.name + RecipeUtils.extension(recipe.type);
@@ -0,0 +1,34 @@
+package com.dataiku.dss.intellij.actions.metrics;
+
+import java.awt.datatransfer.StringSelection;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.dataiku.dss.Logger;
+import com.dataiku.dss.metrics.DssMetrics;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.ui.Messages;
+
+/**
+ * Writes the current DSS metrics to the log and copies them to the clipboard, so that they can be attached to a bug report.
+ */
+public class DumpMetricsAction extends AnAction implements DumbAware {
+    private static final Logger log = Logger.getInstance(DumpMetricsAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        String report = DssMetrics.getInstance().dump();
+        log.info(report);
+        CopyPasteManager.getInstance().setContents(new StringSelection(report));
+        Messages.showInfoMessage(e.getProject(), "DSS metrics have been written to the log and copied to the clipboard.", "DSS Metrics");
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
@@ -55,7 +55,10 @@ public class SynchronizeAction extends AnAction implements DumbAware {
             try {
                 // Do the work
                 DssSettings dssSettings = DssSettings.getInstance();
-                SynchronizeWorker synchronizeWorker = new SynchronizeWorker(DataikuDSSPlugin.getInstance(), dssSettings, new RecipeCache(dssSettings), false);
+                // Explicit synchronizations always start from the latest state of the recipes.
+                RecipeCache recipeCache = RecipeCache.getInstance();
+                recipeCache.invalidateAll();
+                SynchronizeWorker synchronizeWorker = new SynchronizeWorker(DataikuDSSPlugin.getInstance(), dssSettings, recipeCache, false);
                 SynchronizeSummary summary = synchronizeWorker.synchronizeWithDSS(buildRequest(model));
 
                 if (summary.hasConflicts()) {
@@ -20,6 +20,7 @@ import com.dataiku.dss.Logger;
 import com.dataiku.dss.intellij.config.json.DataikuConfig;
 import com.dataiku.dss.intellij.utils.ComponentUtils;
 import com.dataiku.dss.model.DSSClient;
+import com.dataiku.dss.model.http.HttpClientPool;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.gson.Gson;
@@ -55,7 +56,12 @@ public final class DssSettings implements ApplicationComponent, PersistentStateC
     public static class DssConfig {
         public boolean enableBackgroundSynchronization = true;
         public int backgroundSynchronizationPollIntervalInSeconds = 120; // 2 minutes
+        public boolean adaptivePolling = true; // Poll less often while idle, more often after changes, and not at all while the IDE is inactive
         public boolean trackingEnabled = true;
+        public boolean detectRemoteChangesFromListing = true; // Skip downloading remote files whose size & modification date are unchanged
+        public int pendingChangesQuietPeriodInMilliseconds = 1000; // Wait for local changes to settle before sending them to DSS
+        public int recipeCacheTtlInSeconds = 60; // How long the recipes of a project are reused by background polls before being listed again
+        public int recipeCacheMaxProjects = 64;
 
         public DssConfig() {
         }
@@ -72,7 +78,12 @@ public final class DssSettings implements ApplicationComponent, PersistentStateC
         if (state != null) {
             config.enableBackgroundSynchronization = state.enableBackgroundSynchronization;
             config.backgroundSynchronizationPollIntervalInSeconds = state.backgroundSynchronizationPollIntervalInSeconds;
+            config.adaptivePolling = state.adaptivePolling;
             config.trackingEnabled = state.trackingEnabled;
+            config.detectRemoteChangesFromListing = state.detectRemoteChangesFromListing;
+            config.pendingChangesQuietPeriodInMilliseconds = state.pendingChangesQuietPeriodInMilliseconds;
+            config.recipeCacheTtlInSeconds = state.recipeCacheTtlInSeconds;
+            config.recipeCacheMaxProjects = state.recipeCacheMaxProjects;
         }
     }
 
@@ -99,6 +110,11 @@ public final class DssSettings implements ApplicationComponent, PersistentStateC
         }
     }
 
+    @Override
+    public void disposeComponent() {
+        HttpClientPool.getInstance().invalidateAll();
+    }
+
     public void addListener(Listener listener) {
         listeners.add(listener);
     }
@@ -116,6 +132,9 @@ public final class DssSettings implements ApplicationComponent, PersistentStateC
         config.backgroundSynchronizationPollIntervalInSeconds = backgroundSyncPollingInterval;
         config.trackingEnabled = trackingEnabled;
 
+        // Connections established with the previous settings must not be reused.
+        HttpClientPool.getInstance().invalidateAll();
+
         for (Listener listener : listeners) {
             listener.onConfigurationUpdated();
         }
@@ -135,6 +154,26 @@ public final class DssSettings implements ApplicationComponent, PersistentStateC
         return config.backgroundSynchronizationPollIntervalInSeconds;
     }
 
+    public boolean isAdaptivePollingEnabled() {
+        return config.adaptivePolling;
+    }
+
+    public boolean isDetectRemoteChangesFromListingEnabled() {
+        return config.detectRemoteChangesFromListing;
+    }
+
+    public int getPendingChangesQuietPeriodInMilliseconds() {
+        return config.pendingChangesQuietPeriodInMilliseconds;
+    }
+
+    public int getRecipeCacheTtlInSeconds() {
+        return config.recipeCacheTtlInSeconds;
+    }
+
+    public int getRecipeCacheMaxProjects() {
+        return config.recipeCacheMaxProjects;
+    }
+
     public DssInstance getDefaultInstance() {
         return this.defaultServer;
     }
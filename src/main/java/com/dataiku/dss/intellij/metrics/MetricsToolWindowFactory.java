@@ -0,0 +1,62 @@
+package com.dataiku.dss.intellij.metrics;
+
+import java.awt.*;
+import javax.swing.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.dataiku.dss.metrics.DssMetrics;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+
+/**
+ * "DSS Metrics" tool window, showing the report of {@link DssMetrics}, refreshed every few seconds while visible.
+ */
+public class MetricsToolWindowFactory implements ToolWindowFactory, DumbAware {
+    private static final int REFRESH_INTERVAL_MS = 2000;
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        JTextArea reportTextArea = new JTextArea();
+        reportTextArea.setEditable(false);
+        reportTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, reportTextArea.getFont().getSize()));
+
+        Runnable refresh = () -> {
+            int caretPosition = reportTextArea.getCaretPosition();
+            reportTextArea.setText(DssMetrics.getInstance().dump());
+            reportTextArea.setCaretPosition(Math.min(caretPosition, reportTextArea.getDocument().getLength()));
+        };
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh.run());
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            DssMetrics.getInstance().reset();
+            refresh.run();
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(refreshButton);
+        buttons.add(resetButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(buttons, BorderLayout.NORTH);
+        panel.add(new JBScrollPane(reportTextArea), BorderLayout.CENTER);
+        refresh.run();
+
+        Timer timer = new Timer(REFRESH_INTERVAL_MS, e -> {
+            if (panel.isShowing()) {
+                refresh.run();
+            }
+        });
+        timer.start();
+        Disposer.register(toolWindow.getDisposable(), timer::stop);
+
+        Content content = ContentFactory.getInstance().createContent(panel, "", false);
+        toolWindow.getContentManager().addContent(content);
+    }
+}
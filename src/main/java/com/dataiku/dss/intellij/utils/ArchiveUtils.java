@@ -0,0 +1,111 @@
+package com.dataiku.dss.intellij.utils;
+
+import com.dataiku.dss.intellij.utils.VirtualFileManager.WriteBatch;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * Zip archives of whole plugins or project libraries, used to transfer them with a single request instead of one request per file.
+ * Archives are streamed: entries are written to disk (or read from disk) one at a time, never loaded in memory as a whole.
+ */
+public class ArchiveUtils {
+    public interface UnpackListener {
+        void fileUnpacked(String path, File localFile, long contentHash) throws IOException;
+    }
+
+    public interface PackListener {
+        void entryPacked(String path, File localFile, long contentHash) throws IOException;
+    }
+
+    /**
+     * Unpacks the accepted files of the archive under the given directory.
+     *
+     * @param accept tells whether the file located at the given path (relative to the root of the archive) must be unpacked.
+     */
+    public static void unpack(InputStream archive, WriteBatch writeBatch, File baseDir, Predicate<String> accept, UnpackListener listener) throws IOException {
+        ZipInputStream zip = new ZipInputStream(archive, UTF_8);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String path = normalizePath(entry.getName());
+            if (entry.isDirectory() || path.isEmpty() || !accept.test(path)) {
+                continue;
+            }
+            String[] segments = path.split("/");
+            File parent = baseDir;
+            for (int i = 0; i < segments.length - 1; i++) {
+                parent = writeBatch.getOrCreateDirectory(parent, segments[i]);
+            }
+            File localFile = new File(parent, segments[segments.length - 1]);
+            HashingInputStream content = VirtualFileManager.hashContent(zip);
+            writeBatch.writeFile(localFile, content, UTF_8);
+            listener.fileUnpacked(path, localFile, content.hash().asLong());
+        }
+    }
+
+    /**
+     * Packs the accepted files and folders located under the given directory. Folders are reported to the listener with a content hash of 0.
+     */
+    public static void pack(OutputStream archive, File baseDir, Predicate<File> accept, PackListener listener) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(archive, UTF_8);
+        pack(zip, baseDir, "", accept, listener);
+        zip.finish();
+    }
+
+    private static void pack(ZipOutputStream zip, File folder, String pathPrefix, Predicate<File> accept, PackListener listener) throws IOException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (!accept.test(child)) {
+                continue;
+            }
+            String path = pathPrefix + child.getName();
+            if (child.isDirectory()) {
+                zip.putNextEntry(new ZipEntry(path + "/"));
+                zip.closeEntry();
+                listener.entryPacked(path, child, 0);
+                pack(zip, child, path + "/", accept, listener);
+            } else {
+                zip.putNextEntry(new ZipEntry(path));
+                long contentHash;
+                try (HashingInputStream content = VirtualFileManager.hashContent(new FileInputStream(child))) {
+                    ByteStreams.copy(content, zip);
+                    contentHash = content.hash().asLong();
+                }
+                zip.closeEntry();
+                listener.entryPacked(path, child, contentHash);
+            }
+        }
+    }
+
+    private static String normalizePath(String entryName) throws IOException {
+        String path = entryName.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Invalid entry in archive: " + entryName);
+            }
+        }
+        return path;
+    }
+}
@@ -2,23 +2,56 @@ package com.dataiku.dss.intellij.utils;
 
 import static com.google.common.base.Charsets.UTF_8;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.dataiku.dss.Logger;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
-import com.google.common.io.ByteSource;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteStreams;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.openapi.vfs.newvfs.FileAttribute;
 
 @SuppressWarnings("WeakerAccess")
 public class VirtualFileManager {
+    private static final Logger log = Logger.getInstance(VirtualFileManager.class);
+    // Content hash of local files, persisted by the VFS along with the modification date & size of the file it has been computed for.
+    private static final FileAttribute CONTENT_HASH_ATTRIBUTE = new FileAttribute("dss.contentHash", 2, true);
+    // 64-bit fingerprint, stable across versions as it is persisted in metadata files. Fast enough to be computed while streaming content.
+    private static final HashFunction CONTENT_HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+    /**
+     * A file modified more recently than that could be modified again without its modification date changing (on file systems with a
+     * coarse resolution), so its modification date cannot be trusted yet to tell whether its content changed.
+     */
+    public static final long MIN_TRUSTED_TIMESTAMP_AGE_MS = 2000;
+
     private final Object requestor;
     private final boolean runInBackgroundThread;
 
@@ -74,7 +107,11 @@ public class VirtualFileManager {
     //
     //----------------------------------------------------------------------------------------------------------------------------------------------------------
 
-    public static int getContentHash(VirtualFile file) throws IOException {
+    /**
+     * Returns the content hash of the given file. The hash is cached by the VFS, across restarts: the file is only read if its modification
+     * date or size changed since the hash was last computed.
+     */
+    public static long getContentHash(VirtualFile file) throws IOException {
         if (ApplicationManager.getApplication().isReadAccessAllowed()) {
             return getContentHashUnsafe(file);
         } else {
@@ -82,12 +119,28 @@ public class VirtualFileManager {
         }
     }
 
-    public static int getContentHash(String content) throws IOException {
+    public static long getContentHash(String content) throws IOException {
         return getContentHash(content.getBytes(UTF_8));
     }
 
-    public static int getContentHash(byte[] data) throws IOException {
-        return ByteSource.wrap(data).hash(Hashing.adler32()).asInt();
+    public static long getContentHash(byte[] data) throws IOException {
+        return CONTENT_HASH_FUNCTION.hashBytes(data).asLong();
+    }
+
+    /**
+     * Returns the hash of the content read from the given stream, without holding it in memory.
+     */
+    public static long getContentHash(InputStream content) throws IOException {
+        HashingInputStream hashingContent = hashContent(content);
+        ByteStreams.exhaust(hashingContent);
+        return hashingContent.hash().asLong();
+    }
+
+    /**
+     * Wraps the given stream so that the hash of its content (as returned by {@link #getContentHash(byte[])}) can be retrieved once read.
+     */
+    public static HashingInputStream hashContent(InputStream in) {
+        return new HashingInputStream(CONTENT_HASH_FUNCTION, in);
     }
 
     //----------------------------------------------------------------------------------------------------------------------------------------------------------
@@ -151,6 +204,180 @@ public class VirtualFileManager {
         }
     }
 
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+    //
+    // BATCHED WRITE
+    //
+    //----------------------------------------------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a batch of writes. The content of the files is staged into temporary files by the calling thread(s), then written into the
+     * project through the VFS, a chunk of files per write action, when the batch is committed. This avoids a write action on the EDT for
+     * each file, while keeping the VFS in sync with the project files.
+     */
+    public WriteBatch startWriteBatch() {
+        return new WriteBatch(this);
+    }
+
+    public static class WriteBatch {
+        private static final int FILES_PER_WRITE_ACTION = 500; // So that committing a large checkout does not block the EDT at once
+
+        private final VirtualFileManager vFileManager;
+        private final Set<File> createdDirectories = new LinkedHashSet<>(); // In creation order, so parents come first
+        private final Map<File, StagedFile> stagedFiles = new LinkedHashMap<>();
+        private File stagingDirectory;
+
+        private WriteBatch(VirtualFileManager vFileManager) {
+            this.vFileManager = vFileManager;
+        }
+
+        public static File toIoFile(VirtualFile file) {
+            return VfsUtilCore.virtualToIoFile(file);
+        }
+
+        /**
+         * Returns the VFS file located at the given place, or null if it does not exist (or has been created by this batch).
+         */
+        @Nullable
+        public static VirtualFile findVirtualFile(File file) {
+            VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+            return virtualFile != null && virtualFile.isValid() ? virtualFile : null;
+        }
+
+        /**
+         * Returns the given directory, created when the batch is committed if it does not exist yet.
+         */
+        @NotNull
+        public synchronized File getOrCreateDirectory(File parent, String name) {
+            File directory = new File(parent, name);
+            if (!directory.isDirectory() && !createdDirectories.contains(directory)) {
+                if (directory.exists() || stagedFiles.containsKey(directory)) {
+                    throw new IllegalStateException(String.format("Folder %s cannot be created because a file with the same name is already present in the project.", name));
+                }
+                createdDirectories.add(directory);
+            }
+            return directory;
+        }
+
+        public void writeFile(File file, byte[] data, @Nullable Charset charset) throws IOException {
+            File stagedContent = createStagedContent();
+            try {
+                Files.write(stagedContent.toPath(), data);
+            } catch (IOException | RuntimeException e) {
+                deleteStagedContent(stagedContent);
+                throw e;
+            }
+            fileWritten(file, stagedContent, charset);
+        }
+
+        public void writeFile(File file, InputStream content, @Nullable Charset charset) throws IOException {
+            File stagedContent = createStagedContent();
+            try {
+                Files.copy(content, stagedContent.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                deleteStagedContent(stagedContent);
+                throw e;
+            }
+            fileWritten(file, stagedContent, charset);
+        }
+
+        /**
+         * Returns the file holding the content written to the given file by this batch, until it is committed.
+         */
+        public synchronized File getWrittenContent(File file) {
+            StagedFile stagedFile = stagedFiles.get(file);
+            return stagedFile != null ? stagedFile.content : file;
+        }
+
+        private synchronized File createStagedContent() throws IOException {
+            if (stagingDirectory == null) {
+                stagingDirectory = Files.createTempDirectory("dss-write-batch").toFile();
+            }
+            return File.createTempFile("staged", null, stagingDirectory);
+        }
+
+        private synchronized void fileWritten(File file, File stagedContent, @Nullable Charset charset) {
+            StagedFile previous = stagedFiles.put(file, new StagedFile(stagedContent, charset));
+            if (previous != null) {
+                deleteStagedContent(previous.content);
+            }
+        }
+
+        /**
+         * Writes the directories & files of the batch into the project through the VFS, making them visible in the IDE, and starts a new
+         * batch.
+         */
+        public synchronized void commit() throws IOException {
+            try {
+                if (!createdDirectories.isEmpty()) {
+                    vFileManager.safeWrite(() -> {
+                        for (File directory : createdDirectories) {
+                            getOrCreateVirtualDirectory(directory);
+                        }
+                    });
+                }
+                List<Map.Entry<File, StagedFile>> files = new ArrayList<>(stagedFiles.entrySet());
+                for (List<Map.Entry<File, StagedFile>> chunk : Lists.partition(files, FILES_PER_WRITE_ACTION)) {
+                    vFileManager.safeWrite(() -> {
+                        for (Map.Entry<File, StagedFile> entry : chunk) {
+                            applyStagedFile(entry.getKey(), entry.getValue());
+                        }
+                    });
+                }
+            } finally {
+                for (StagedFile stagedFile : stagedFiles.values()) {
+                    deleteStagedContent(stagedFile.content);
+                }
+                if (stagingDirectory != null) {
+                    deleteStagedContent(stagingDirectory);
+                    stagingDirectory = null;
+                }
+                createdDirectories.clear();
+                stagedFiles.clear();
+            }
+        }
+
+        private void applyStagedFile(File file, StagedFile stagedFile) throws IOException {
+            VirtualFile virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
+            boolean created = virtualFile == null;
+            if (created) {
+                virtualFile = getOrCreateVirtualDirectory(file.getParentFile()).createChildData(vFileManager.requestor, file.getName());
+            }
+            try (InputStream in = new FileInputStream(stagedFile.content);
+                 OutputStream out = virtualFile.getOutputStream(vFileManager.requestor)) {
+                ByteStreams.copy(in, out);
+            }
+            if (created && stagedFile.charset != null) {
+                virtualFile.setCharset(stagedFile.charset);
+            }
+        }
+
+        @NotNull
+        private static VirtualFile getOrCreateVirtualDirectory(File directory) throws IOException {
+            VirtualFile virtualDirectory = VfsUtil.createDirectoryIfMissing(directory.getPath());
+            if (virtualDirectory == null) {
+                throw new IOException("Unable to create directory " + directory.getPath());
+            }
+            return virtualDirectory;
+        }
+
+        private static void deleteStagedContent(File file) {
+            if (file.exists() && !file.delete()) {
+                log.info("Unable to delete temporary file: " + file);
+            }
+        }
+
+        private static class StagedFile {
+            final File content;
+            @Nullable final Charset charset; // Set on the file if it is created, may be null
+
+            StagedFile(File content, @Nullable Charset charset) {
+                this.content = content;
+                this.charset = charset;
+            }
+        }
+    }
+
     //----------------------------------------------------------------------------------------------------------------------------------------------------------
     //
     // WRITE unsafe methods
@@ -186,9 +413,49 @@ public class VirtualFileManager {
         }
     }
 
-    private static int getContentHashUnsafe(VirtualFile file) throws IOException {
+    private static long getContentHashUnsafe(VirtualFile file) throws IOException {
+        long timeStamp = file.getTimeStamp();
+        long length = file.getLength();
+        Long cachedHash = readCachedContentHash(file, timeStamp, length);
+        if (cachedHash != null) {
+            return cachedHash;
+        }
+        long contentHash;
         try (InputStream inputStream = file.getInputStream()) {
-            return getContentHash(ByteStreams.toByteArray(inputStream));
+            contentHash = getContentHash(inputStream);
+        }
+        if (System.currentTimeMillis() - timeStamp > MIN_TRUSTED_TIMESTAMP_AGE_MS) {
+            writeCachedContentHash(file, timeStamp, length, contentHash);
+        }
+        return contentHash;
+    }
+
+    @Nullable
+    private static Long readCachedContentHash(VirtualFile file, long timeStamp, long length) {
+        if (!(file instanceof VirtualFileWithId)) {
+            return null; // Not stored by the persistent VFS (e.g. in-memory file)
+        }
+        try (DataInputStream in = CONTENT_HASH_ATTRIBUTE.readAttribute(file)) {
+            if (in != null && in.readLong() == timeStamp && in.readLong() == length) {
+                return in.readLong();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read cached content hash of " + file.getPath(), e);
+        }
+        return null;
+    }
+
+    private static void writeCachedContentHash(VirtualFile file, long timeStamp, long length, long contentHash) {
+        if (!(file instanceof VirtualFileWithId)) {
+            return;
+        }
+        try (DataOutputStream out = CONTENT_HASH_ATTRIBUTE.writeAttribute(file)) {
+            out.writeLong(timeStamp);
+            out.writeLong(length);
+            out.writeLong(contentHash);
+        } catch (IOException e) {
+            // Only a cache, the hash will be computed again next time.
+            log.warn("Unable to cache content hash of " + file.getPath(), e);
         }
     }
 
@@ -0,0 +1,262 @@
+package com.dataiku.dss.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.dataiku.dss.Logger;
+
+/**
+ * Process-wide metrics of the requests sent to DSS and of the synchronizations, exposed in the "DSS Metrics" tool window, through JMX and
+ * by the "Dump DSS Metrics" action. Recording is cheap enough to stay always on: counters are {@link LongAdder}s and histograms are
+ * lock-free.
+ */
+public class DssMetrics implements DssMetricsMBean {
+    public static final String OBJECT_NAME = "com.dataiku.dss:type=Metrics";
+    private static final int MAX_RECENT_SYNCHRONIZATIONS = 20;
+    private static final DssMetrics INSTANCE = new DssMetrics();
+    private static final Logger log = Logger.getInstance(DssMetrics.class);
+
+    public static DssMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Exposes the metrics on the platform MBean server, so that they can be watched with JConsole or VisualVM.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            log.warn("Unable to register DSS metrics MBean", e);
+        }
+    }
+
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Unable to unregister DSS metrics MBean", e);
+        }
+    }
+
+    private final ConcurrentMap<EndpointKey, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> retries = new ConcurrentHashMap<>();
+    private final LatencyHistogram syncDurations = new LatencyHistogram();
+    private final Deque<SyncMetrics> recentSyncs = new ArrayDeque<>();
+    private volatile long resetTimeMillis = System.currentTimeMillis();
+
+    /**
+     * Returns the statistics of the given endpoint, where the endpoint is a URL path template such as "plugins/&#42;/contents/&#42;".
+     */
+    public EndpointStats getEndpointStats(String instanceUrl, String method, String endpoint) {
+        return endpoints.computeIfAbsent(new EndpointKey(instanceUrl, method, endpoint), key -> new EndpointStats());
+    }
+
+    public void requestRetried(String instanceUrl) {
+        retries.computeIfAbsent(instanceUrl, key -> new LongAdder()).increment();
+    }
+
+    public void synchronizationCompleted(SyncMetrics sync, boolean failed) {
+        sync.completed(failed);
+        syncDurations.record(sync.getDurationMillis());
+        synchronized (recentSyncs) {
+            recentSyncs.addFirst(sync);
+            while (recentSyncs.size() > MAX_RECENT_SYNCHRONIZATIONS) {
+                recentSyncs.removeLast();
+            }
+        }
+    }
+
+    @Override
+    public long getRequestCount() {
+        return endpoints.values().stream().mapToLong(stats -> stats.latencies.getCount()).sum();
+    }
+
+    @Override
+    public long getRequestErrorCount() {
+        return endpoints.values().stream().mapToLong(stats -> stats.errors.sum()).sum();
+    }
+
+    @Override
+    public long getRequestRetryCount() {
+        return retries.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return endpoints.values().stream().mapToLong(stats -> stats.bytesReceived.sum()).sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return endpoints.values().stream().mapToLong(stats -> stats.bytesSent.sum()).sum();
+    }
+
+    @Override
+    public long getSynchronizationCount() {
+        return syncDurations.getCount();
+    }
+
+    @Override
+    public long getLastSynchronizationDurationMillis() {
+        synchronized (recentSyncs) {
+            return recentSyncs.isEmpty() ? -1 : recentSyncs.getFirst().getDurationMillis();
+        }
+    }
+
+    @Override
+    public void reset() {
+        endpoints.clear();
+        retries.clear();
+        synchronized (recentSyncs) {
+            recentSyncs.clear();
+        }
+        syncDurations.reset();
+        resetTimeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns a plain-text report of all metrics, suitable for a bug report.
+     */
+    @Override
+    public String dump() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder out = new StringBuilder();
+        out.append("DSS metrics since ").append(dateFormat.format(new Date(resetTimeMillis))).append('\n');
+
+        List<Map.Entry<EndpointKey, EndpointStats>> entries = new ArrayList<>(endpoints.entrySet());
+        entries.sort(Map.Entry.comparingByKey(Comparator.comparing((EndpointKey key) -> key.instanceUrl)
+                .thenComparing(key -> key.endpoint)
+                .thenComparing(key -> key.method)));
+        String currentInstance = null;
+        for (Map.Entry<EndpointKey, EndpointStats> entry : entries) {
+            EndpointKey key = entry.getKey();
+            EndpointStats stats = entry.getValue();
+            if (!key.instanceUrl.equals(currentInstance)) {
+                currentInstance = key.instanceUrl;
+                LongAdder instanceRetries = retries.get(currentInstance);
+                out.append("\nRequests to ").append(currentInstance)
+                        .append(" (retries: ").append(instanceRetries == null ? 0 : instanceRetries.sum()).append(")\n");
+            }
+            LatencyHistogram latencies = stats.latencies;
+            out.append(String.format("  %-6s %-40s count=%d errors=%d mean=%dms p50=%dms p95=%dms p99=%dms max=%dms in=%s out=%s%n",
+                    key.method, key.endpoint, latencies.getCount(), stats.errors.sum(), latencies.getMeanMillis(),
+                    latencies.getPercentileMillis(50), latencies.getPercentileMillis(95), latencies.getPercentileMillis(99),
+                    latencies.getMaxMillis(), formatBytes(stats.bytesReceived.sum()), formatBytes(stats.bytesSent.sum())));
+            out.append("         buckets: ").append(latencies.formatBuckets()).append('\n');
+        }
+        if (entries.isEmpty()) {
+            out.append("\nNo request sent to DSS.\n");
+        }
+
+        out.append(String.format("%nSynchronizations: count=%d mean=%dms p95=%dms max=%dms%n", syncDurations.getCount(),
+                syncDurations.getMeanMillis(), syncDurations.getPercentileMillis(95), syncDurations.getMaxMillis()));
+        List<SyncMetrics> syncs;
+        synchronized (recentSyncs) {
+            syncs = new ArrayList<>(recentSyncs);
+        }
+        for (SyncMetrics sync : syncs) {
+            out.append(String.format("  %s %-10s %6dms%s scanned=%d hashed=%d downloaded=%d uploaded=%d%n",
+                    dateFormat.format(new Date(sync.startTimeMillis)), sync.background ? "background" : "manual", sync.getDurationMillis(),
+                    sync.isFailed() ? " FAILED" : "", sync.getFilesScanned(), sync.getFilesHashed(), sync.getFilesDownloaded(),
+                    sync.getFilesUploaded()));
+            StringBuilder phases = new StringBuilder();
+            for (SyncMetrics.Phase phase : SyncMetrics.Phase.values()) {
+                long phaseMillis = sync.getPhaseMillis(phase);
+                if (phaseMillis > 0) {
+                    phases.append(phases.length() == 0 ? "    " : ", ").append(phase.label).append(": ").append(phaseMillis).append("ms");
+                }
+            }
+            if (phases.length() > 0) {
+                out.append(phases).append('\n');
+            }
+        }
+        if (!syncs.isEmpty()) {
+            out.append("  (phase durations are summed over parallel tasks)\n");
+        }
+        return out.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        } else {
+            return String.format("%.1fMB", bytes / (1024.0 * 1024));
+        }
+    }
+
+    public static class EndpointStats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+
+        public void requestCompleted(long latencyMillis, boolean success) {
+            latencies.record(latencyMillis);
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        public void bytesReceived(long count) {
+            bytesReceived.add(count);
+        }
+
+        public void bytesSent(long count) {
+            bytesSent.add(count);
+        }
+    }
+
+    private static class EndpointKey {
+        final String instanceUrl;
+        final String method;
+        final String endpoint;
+
+        EndpointKey(String instanceUrl, String method, String endpoint) {
+            this.instanceUrl = instanceUrl;
+            this.method = method;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            EndpointKey that = (EndpointKey) o;
+            return instanceUrl.equals(that.instanceUrl) && method.equals(that.method) && endpoint.equals(that.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instanceUrl, method, endpoint);
+        }
+    }
+}
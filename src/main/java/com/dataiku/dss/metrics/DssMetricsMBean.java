@@ -0,0 +1,24 @@
+package com.dataiku.dss.metrics;
+
+/**
+ * JMX view of {@link DssMetrics}, registered under {@link DssMetrics#OBJECT_NAME}.
+ */
+public interface DssMetricsMBean {
+    long getRequestCount();
+
+    long getRequestErrorCount();
+
+    long getRequestRetryCount();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    long getSynchronizationCount();
+
+    long getLastSynchronizationDurationMillis();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,93 @@
+package com.dataiku.dss.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with fixed buckets growing exponentially from 1 ms to 1 min. Percentiles are approximated by the
+ * upper bound of the bucket they fall in, which is enough to tell a slow DSS instance (or network) from a slow plugin.
+ */
+public class LatencyHistogram {
+    // Upper bounds (inclusive) of the buckets, the last bucket holding all durations above the last bound.
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public void record(long durationMillis) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && durationMillis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMillis.addAndGet(durationMillis);
+        maxMillis.accumulateAndGet(durationMillis, Math::max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMillis.set(0);
+        maxMillis.set(0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public long getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalMillis.get() / n;
+    }
+
+    /**
+     * Returns the upper bound of the bucket in which the given percentile (between 0 and 100) falls, or the maximum duration seen if it falls
+     * in the last bucket.
+     */
+    public long getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis.get());
+            }
+        }
+        return maxMillis.get();
+    }
+
+    /**
+     * Returns the number of durations in each bucket, as "<=bound:count" pairs, skipping empty buckets.
+     */
+    public String formatBuckets() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < buckets.length(); i++) {
+            long bucketCount = buckets.get(i);
+            if (bucketCount > 0) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(i < BUCKET_BOUNDS_MILLIS.length ? "<=" + BUCKET_BOUNDS_MILLIS[i] : ">" + BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1])
+                        .append("ms:").append(bucketCount);
+            }
+        }
+        return result.toString();
+    }
+}
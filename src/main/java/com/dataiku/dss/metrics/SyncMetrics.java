@@ -0,0 +1,98 @@
+package com.dataiku.dss.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a single synchronization. They are updated concurrently by the tasks of the synchronization, so phase durations are summed
+ * over all tasks and may exceed the duration of the synchronization.
+ */
+public class SyncMetrics {
+    public enum Phase {
+        LISTING("Remote listings"),
+        ARCHIVES("Archive transfers"),
+        COMPARISON("Comparison (including downloads & uploads)"),
+        DOWNLOADS("Downloads"),
+        UPLOADS("Uploads"),
+        RECIPES("Recipes"),
+        METADATA("Metadata writes");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    public final boolean background;
+    public final long startTimeMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder filesHashed = new LongAdder();
+    private final LongAdder filesDownloaded = new LongAdder();
+    private final LongAdder filesUploaded = new LongAdder();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private volatile long durationMillis = -1; // -1 until completed
+    private volatile boolean failed;
+
+    public SyncMetrics(boolean background) {
+        this.background = background;
+    }
+
+    public void fileScanned() {
+        filesScanned.increment();
+    }
+
+    public void fileHashed() {
+        filesHashed.increment();
+    }
+
+    public void fileDownloaded() {
+        filesDownloaded.increment();
+    }
+
+    public void fileUploaded() {
+        filesUploaded.increment();
+    }
+
+    /**
+     * Adds the time elapsed since the given {@link System#nanoTime()} to the duration of the given phase.
+     */
+    public void phaseCompleted(Phase phase, long startNanos) {
+        phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+    }
+
+    void completed(boolean failed) {
+        this.failed = failed;
+        this.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public long getFilesScanned() {
+        return filesScanned.sum();
+    }
+
+    public long getFilesHashed() {
+        return filesHashed.sum();
+    }
+
+    public long getFilesDownloaded() {
+        return filesDownloaded.sum();
+    }
+
+    public long getFilesUploaded() {
+        return filesUploaded.sum();
+    }
+
+    public long getPhaseMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()));
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+}
@@ -1,29 +1,55 @@
 package com.dataiku.dss.model;
 
 import com.dataiku.dss.Logger;
+import com.dataiku.dss.metrics.DssMetrics;
 import com.dataiku.dss.model.dss.*;
+import com.dataiku.dss.model.http.HttpClientPool;
 import com.dataiku.dss.model.http.HttpClientWithContext;
-import com.dataiku.dss.model.http.HttpClientWithContextBuilder;
+import com.dataiku.dss.model.http.MeteredEntity;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.*;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Charsets.ISO_8859_1;
@@ -39,9 +65,31 @@ public class DSSClient {
     private static final String PLUGINS = "plugins";
     private static final String LIBRARIES = "libraries";
     private static final String CONTENTS = "contents";
+    private static final String DOWNLOAD = "download";
+    private static final String ACTIONS = "actions";
+    private static final String UPDATE_FROM_ZIP = "updateFromZip";
+    private static final String FOLDERS = "folders";
+    private static final Set<String> ENDPOINT_SEGMENTS = ImmutableSet.of(PROJECTS, RECIPES, PLUGINS, LIBRARIES, CONTENTS, DOWNLOAD, ACTIONS, UPDATE_FROM_ZIP, FOLDERS);
+    private static final String RAW_CONTENT_TYPE = "application/octet-stream";
+    private static final Set<Integer> NOT_SUPPORTED_CODES = ImmutableSet.of(404, 405, 501);
+    private static final Set<String> archiveDownloadNotSupportedUrls = ConcurrentHashMap.newKeySet(); // DSS instances lacking archive downloads
+    private static final Set<String> archiveUploadNotSupportedUrls = ConcurrentHashMap.newKeySet(); // DSS instances lacking archive uploads
+    private static final Set<String> folderCreationNotSupportedUrls = ConcurrentHashMap.newKeySet(); // DSS instances lacking folder creation
+    private static final Set<String> recursiveDeleteNotSupportedUrls = ConcurrentHashMap.newKeySet(); // DSS instances unable to delete non-empty folders
+    private static final int MAX_PARALLEL_DELETES = 4;
+    private static final ExecutorService deleteExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_DELETES,
+            new ThreadFactoryBuilder().setNameFormat("DSS delete %d").setDaemon(true).build());
 
     private static final Logger log = Logger.getInstance(DSSClient.class);
 
+    public interface ContentReader<T> {
+        T read(InputStream content) throws IOException;
+    }
+
+    public interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
     private final String baseUrl;
     private final String apiKey;
     private final boolean noCheckCertificate;
@@ -62,10 +110,11 @@ public class DSSClient {
     }
 
     public String getDssVersion() {
-        try (HttpClientWithContext client = createHttpClient()) {
-            URI url = buildUrl(PROJECTS, "");
-            HttpResponse response = executeRequest(new HttpGet(url), client);
+        URI url = buildUrl(PROJECTS, "");
+        try (HttpClientWithContext client = createHttpClient();
+             CloseableHttpResponse response = executeRequest(new HttpGet(url), client)) {
             Header header = response.getFirstHeader("DSS-Version");
+            EntityUtils.consume(response.getEntity());
             return header != null ? header.getValue() : null;
         } catch (IOException e) {
             log.info("Unable to retrieve DSS version", e);
@@ -87,25 +136,84 @@ public class DSSClient {
 
     public RecipeAndPayload loadRecipe(String projectKey, String recipeName) throws DssException {
         URI url = buildUrl(PROJECTS, projectKey, RECIPES, recipeName);
-        return executeGet(url, RecipeAndPayload.class);
+        String body = executeGet(url);
+        try {
+            // Parsed only once, the document is kept so that the recipe can be saved back as is.
+            JsonObject document = JsonParser.parseString(body).getAsJsonObject();
+            RecipeAndPayload result = new GsonBuilder().create().fromJson(document, RecipeAndPayload.class);
+            result.document = document;
+            return result;
+        } catch (RuntimeException e) {
+            String errorMsg = "Unable to parse response returned by DSS as " + RecipeAndPayload.class + ":\n" + body;
+            log.warn(errorMsg);
+            throw new DssException(errorMsg);
+        }
     }
 
     public void saveRecipeContent(String projectKey, String recipeName, String payload) throws DssException {
-        URI url = buildUrl(PROJECTS, projectKey, RECIPES, recipeName);
+        saveRecipeContent(projectKey, recipeName, payload, null);
+    }
 
-        // Load existing recipe & change only the payload (this way we are compatible with all versions of DSS).
-        String existingRecipeJSon = executeGet(url);
-        JsonParser parser = new JsonParser();
-        JsonObject existingRecipe = parser.parse(existingRecipeJSon).getAsJsonObject();
-        JsonPrimitive existingPayload = existingRecipe.getAsJsonPrimitive("payload");
+    /**
+     * Saves the payload of the recipe, changing only the payload of its existing document (this way we are compatible with all versions of
+     * DSS). The document is loaded first, unless the recipe has just been loaded with {@link #loadRecipe(String, String)}.
+     *
+     * @param existingRecipe the recipe as previously loaded, or null to load it.
+     * @return the saved recipe with its new version tag, or null if DSS did not return the new version tag.
+     */
+    @Nullable
+    public Recipe saveRecipeContent(String projectKey, String recipeName, String payload, @Nullable RecipeAndPayload existingRecipe) throws DssException {
+        if (existingRecipe == null || existingRecipe.document == null) {
+            existingRecipe = loadRecipe(projectKey, recipeName);
+        }
+        JsonObject document = existingRecipe.document.deepCopy();
+        JsonPrimitive existingPayload = document.getAsJsonPrimitive("payload");
 
         // If the new payload is different from the existing payload, upload the new payload
-        if (existingPayload == null || !Objects.equals(existingPayload.getAsString(), payload)) {
-            existingRecipe.remove("payload");
-            existingRecipe.add("payload", new JsonPrimitive(payload));
+        if (existingPayload != null && Objects.equals(existingPayload.getAsString(), payload)) {
+            return existingRecipe.recipe;
+        }
+        document.remove("payload");
+        document.add("payload", new JsonPrimitive(payload));
 
-            String body = new GsonBuilder().create().toJson(existingRecipe);
-            executePut(url, body);
+        URI url = buildUrl(PROJECTS, projectKey, RECIPES, recipeName);
+        String response = executePut(url, new GsonBuilder().create().toJson(document));
+
+        VersionTag versionTag = parseVersionTag(response);
+        if (versionTag == null || existingRecipe.recipe == null) {
+            return null;
+        }
+        Recipe savedRecipe = new Recipe();
+        savedRecipe.projectKey = existingRecipe.recipe.projectKey;
+        savedRecipe.name = existingRecipe.recipe.name;
+        savedRecipe.type = existingRecipe.recipe.type;
+        savedRecipe.versionTag = versionTag;
+        return savedRecipe;
+    }
+
+    /**
+     * Returns the version tag found in the response to a recipe update, either at the top-level or in the returned recipe, depending on the
+     * version of DSS. Returns null if there is none.
+     */
+    @Nullable
+    private static VersionTag parseVersionTag(String response) {
+        try {
+            JsonElement element = JsonParser.parseString(response);
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            JsonObject object = element.getAsJsonObject();
+            if (object.has("recipe") && object.get("recipe").isJsonObject()) {
+                object = object.getAsJsonObject("recipe");
+            }
+            JsonElement versionTag = object.get("versionTag");
+            if (versionTag == null || !versionTag.isJsonObject() || !versionTag.getAsJsonObject().has("versionNumber")) {
+                return null;
+            }
+            return new GsonBuilder().create().fromJson(versionTag, VersionTag.class);
+        } catch (RuntimeException e) {
+            log.debug("Unable to read version tag from response returned by DSS", e);
+            return null;
         }
     }
 
@@ -138,11 +246,106 @@ public class DSSClient {
         return executeGet(url, FolderContent.class);
     }
 
+    /**
+     * Downloads a library file, streaming its raw content to the given reader. Older versions of DSS only return library files as text
+     * wrapped in a JSON document: the content is then extracted from the document. A JSON response is only unwrapped if it actually is
+     * such a document, as the raw content of a JSON file may be labelled as JSON too.
+     */
+    public <T> T downloadLibraryFile(String projectKey, String path, ContentReader<T> reader) throws DssException {
+        URI url = buildUrl(PROJECTS, projectKey, LIBRARIES, CONTENTS, path);
+        log.debug("Executing GET request to " + url);
+        HttpGet request = new HttpGet(url);
+        request.setHeader(HttpHeaders.ACCEPT, RAW_CONTENT_TYPE);
+        try (HttpClientWithContext client = createHttpClient();
+             CloseableHttpResponse response = executeRequest(request, client);
+             InputStream content = response.getEntity().getContent()) {
+            if (isJson(response.getEntity())) {
+                byte[] body = ByteStreams.toByteArray(content);
+                FolderContent document = parseFolderContentDocument(body);
+                if (document != null) {
+                    String data = document.data == null ? "" : document.data;
+                    return reader.read(new ByteArrayInputStream(data.getBytes(UTF_8)));
+                }
+                return reader.read(new ByteArrayInputStream(body));
+            }
+            return reader.read(content);
+        } catch (DssException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DssException(e);
+        }
+    }
+
+    /**
+     * Returns the file document wrapping the content of a library file, or null if the given JSON is not such a document.
+     */
+    @Nullable
+    private static FolderContent parseFolderContentDocument(byte[] json) {
+        try {
+            JsonElement element = JsonParser.parseString(new String(json, UTF_8));
+            if (!element.isJsonObject() || !element.getAsJsonObject().has("hasData")) {
+                return null;
+            }
+            return new GsonBuilder().create().fromJson(element, FolderContent.class);
+        } catch (RuntimeException e) {
+            log.debug("Library file returned by DSS is not a file document", e);
+            return null;
+        }
+    }
+
     public byte[] downloadPluginFile(String pluginId, String path) throws DssException {
         URI url = buildUrl(PLUGINS, pluginId, CONTENTS, path);
         return executeGetAndReturnByteArray(url);
     }
 
+    /**
+     * Downloads a plugin file, streaming its content to the given reader instead of loading it in memory.
+     */
+    public <T> T downloadPluginFile(String pluginId, String path, ContentReader<T> reader) throws DssException {
+        URI url = buildUrl(PLUGINS, pluginId, CONTENTS, path);
+        return executeGet(url, reader);
+    }
+
+    /**
+     * Downloads the whole plugin as a zip archive, streamed to the given reader.
+     *
+     * @return false if the DSS instance does not support archive downloads, in which case files must be downloaded one at a time.
+     */
+    public boolean downloadPluginArchive(String pluginId, ContentReader<?> reader) throws DssException {
+        URI url = buildUrl(PLUGINS, pluginId, DOWNLOAD);
+        return executeArchiveRequest(new HttpGet(url), reader, archiveDownloadNotSupportedUrls);
+    }
+
+    /**
+     * Downloads the whole project library as a zip archive, streamed to the given reader.
+     *
+     * @return false if the DSS instance does not support archive downloads, in which case files must be downloaded one at a time.
+     */
+    public boolean downloadLibraryArchive(String projectKey, ContentReader<?> reader) throws DssException {
+        URI url = buildUrl(PROJECTS, projectKey, LIBRARIES, DOWNLOAD);
+        return executeArchiveRequest(new HttpGet(url), reader, archiveDownloadNotSupportedUrls);
+    }
+
+    /**
+     * Replaces the content of the plugin by the zip archive produced by the given writer.
+     *
+     * @return false if the DSS instance does not support archive uploads, in which case files must be uploaded one at a time.
+     */
+    public boolean uploadPluginArchive(String pluginId, ContentWriter writer) throws DssException {
+        URI url = buildUrl(PLUGINS, pluginId, ACTIONS, UPDATE_FROM_ZIP);
+        return executeArchiveRequest(createArchiveUploadRequest(url, pluginId, writer), ByteStreams::exhaust, archiveUploadNotSupportedUrls);
+    }
+
+    /**
+     * Replaces the content of the project library by the zip archive produced by the given writer.
+     *
+     * @return false if the DSS instance does not support archive uploads, in which case files must be uploaded one at a time.
+     */
+    public boolean uploadLibraryArchive(String projectKey, ContentWriter writer) throws DssException {
+        URI url = buildUrl(PROJECTS, projectKey, LIBRARIES, ACTIONS, UPDATE_FROM_ZIP);
+        return executeArchiveRequest(createArchiveUploadRequest(url, projectKey, writer), ByteStreams::exhaust, archiveUploadNotSupportedUrls);
+    }
+
     public void deletePluginFile(String pluginId, String path) throws DssException {
         URI url = buildUrl(PLUGINS, pluginId, CONTENTS, path);
         executeDelete(url);
@@ -155,48 +358,159 @@ public class DSSClient {
 
     public void uploadPluginFile(String pluginId, String path, byte[] content) throws DssException {
         URI url = buildUrl(PLUGINS, pluginId, CONTENTS, path);
-        try (HttpClientWithContext client = createHttpClient()) {
-            HttpPost request = new HttpPost(url);
-            request.setEntity(new ByteArrayEntity(content));
-            executeRequest(request, client);
-        } catch (DssException e) {
-            throw e;
-        } catch (IOException e) {
-            throw new DssException(e);
-        }
+        executePost(url, new ByteArrayEntity(content));
+    }
+
+    /**
+     * Uploads a plugin file, streaming it from the given local file instead of loading it in memory.
+     */
+    public void uploadPluginFile(String pluginId, String path, File content) throws DssException {
+        URI url = buildUrl(PLUGINS, pluginId, CONTENTS, path);
+        executePost(url, new FileEntity(content));
     }
 
     public void uploadLibraryFile(String projectKey, String path, byte[] content) throws DssException {
         URI url = buildUrl(PROJECTS, projectKey, LIBRARIES, CONTENTS, path);
-        try (HttpClientWithContext client = createHttpClient()) {
-            HttpPost request = new HttpPost(url);
-            request.setEntity(new ByteArrayEntity(content));
-            executeRequest(request, client);
+        executePost(url, new ByteArrayEntity(content));
+    }
+
+    /**
+     * Uploads a library file, streaming it from the given local file instead of loading it in memory.
+     */
+    public void uploadLibraryFile(String projectKey, String path, File content) throws DssException {
+        URI url = buildUrl(PROJECTS, projectKey, LIBRARIES, CONTENTS, path);
+        executePost(url, new FileEntity(content));
+    }
+
+    /**
+     * Deletes a plugin folder and all its content, listed in the given folder.
+     */
+    public void deletePluginFolder(String pluginId, FolderContent folder) throws DssException {
+        deleteFolder(folder, path -> buildUrl(PLUGINS, pluginId, CONTENTS, path));
+    }
+
+    /**
+     * Deletes a library folder and all its content, listed in the given folder.
+     */
+    public void deleteLibraryFolder(String projectKey, FolderContent folder) throws DssException {
+        deleteFolder(folder, path -> buildUrl(PROJECTS, projectKey, LIBRARIES, CONTENTS, path));
+    }
+
+    public void createPluginFolder(String pluginId, String path) throws DssException {
+        if (!createFolder(buildUrl(PLUGINS, pluginId, FOLDERS, path))) {
+            // Folders are implicitly created with the files they contain.
+            String dummyFilePath = path + "/dummy" + UUID.randomUUID();
+            uploadPluginFile(pluginId, dummyFilePath, new byte[0]);
+            deletePluginFile(pluginId, dummyFilePath);
+        }
+    }
+
+    public void createLibraryFolder(String projectKey, String path) throws DssException {
+        if (!createFolder(buildUrl(PROJECTS, projectKey, LIBRARIES, FOLDERS, path))) {
+            // Folders are implicitly created with the files they contain.
+            String dummyFilePath = path + "/dummy" + UUID.randomUUID();
+            uploadLibraryFile(projectKey, dummyFilePath, new byte[0]);
+            deleteLibraryFile(projectKey, dummyFilePath);
+        }
+    }
+
+    /**
+     * @return false if the DSS instance does not support folder creation.
+     */
+    private boolean createFolder(URI url) throws DssException {
+        if (folderCreationNotSupportedUrls.contains(baseUrl)) {
+            return false;
+        }
+        try {
+            executePost(url, new ByteArrayEntity(new byte[0]));
+            return true;
         } catch (DssException e) {
+            if (NOT_SUPPORTED_CODES.contains(e.getCode())) {
+                log.info(String.format("DSS instance '%s' does not support folder creation (code %d), falling back to dummy files.", baseUrl, e.getCode()));
+                folderCreationNotSupportedUrls.add(baseUrl);
+                return false;
+            }
             throw e;
-        } catch (IOException e) {
-            throw new DssException(e);
         }
     }
 
-    public void createPluginFolder(String pluginId, String path) throws DssException {
-        String dummyFilePath = path + "/dummy" + UUID.randomUUID();
-        uploadPluginFile(pluginId, dummyFilePath, new byte[0]);
-        deletePluginFile(pluginId, dummyFilePath);
+    /**
+     * Deletes a folder with a single request if DSS deletes non-empty folders. Otherwise, its files are deleted a few at a time in
+     * parallel, then its folders from the deepest one. Only a DSS instance not supporting the deletion of folders at all is remembered,
+     * other errors (e.g. a non-empty folder rejected, or a transient 5xx) only make this deletion fall back to deleting the content first.
+     */
+    private void deleteFolder(FolderContent folder, Function<String, URI> contentUrl) throws DssException {
+        if (!recursiveDeleteNotSupportedUrls.contains(baseUrl)) {
+            try {
+                executeDelete(contentUrl.apply(folder.path));
+                return;
+            } catch (DssException e) {
+                int code = e.getCode();
+                if (code == 404) {
+                    log.info(String.format("Folder '%s' has already been deleted from DSS instance '%s'.", folder.path, baseUrl));
+                    return;
+                }
+                if (code < 400 || code == 401 || code == 403) {
+                    throw e;
+                }
+                if (code == 405 || code == 501) {
+                    log.info(String.format("DSS instance '%s' cannot delete folders (code %d), deleting their content first.", baseUrl, code));
+                    recursiveDeleteNotSupportedUrls.add(baseUrl);
+                } else {
+                    log.info(String.format("Unable to delete folder '%s' from DSS instance '%s' at once (code %d), deleting its content first.", folder.path, baseUrl, code));
+                }
+            }
+        }
+        List<String> filePaths = new ArrayList<>();
+        List<String> folderPaths = new ArrayList<>();
+        listContent(folder, filePaths, folderPaths);
+
+        List<Future<?>> deletions = new ArrayList<>();
+        for (String filePath : filePaths) {
+            deletions.add(deleteExecutor.submit(() -> {
+                executeDelete(contentUrl.apply(filePath));
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> deletion : deletions) {
+                deletion.get();
+            }
+        } catch (InterruptedException e) {
+            deletions.forEach(deletion -> deletion.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new DssException("Deletion of folder " + folder.path + " has been interrupted", e);
+        } catch (ExecutionException e) {
+            deletions.forEach(deletion -> deletion.cancel(true));
+            if (e.getCause() instanceof DssException) {
+                throw (DssException) e.getCause();
+            }
+            throw new DssException("Unable to delete folder " + folder.path, e);
+        }
+        Collections.reverse(folderPaths);
+        for (String folderPath : folderPaths) {
+            executeDelete(contentUrl.apply(folderPath));
+        }
     }
 
-    public void createLibraryFolder(String projectKey, String path) throws DssException {
-        String dummyFilePath = path + "/dummy" + UUID.randomUUID();
-        uploadLibraryFile(projectKey, dummyFilePath, new byte[0]);
-        deleteLibraryFile(projectKey, dummyFilePath);
+    private static void listContent(FolderContent folder, List<String> filePaths, List<String> folderPaths) {
+        folderPaths.add(folder.path);
+        if (folder.children != null) {
+            for (FolderContent child : folder.children) {
+                if (child.mimeType == null || "null".equals(child.mimeType)) {
+                    listContent(child, filePaths, folderPaths);
+                } else {
+                    filePaths.add(child.path);
+                }
+            }
+        }
     }
 
     private HttpClientWithContext createHttpClient() throws DssException {
-        return new HttpClientWithContextBuilder(baseUrl, noCheckCertificate).build();
+        return HttpClientPool.getInstance().acquire(baseUrl, noCheckCertificate);
     }
 
     @NotNull
-    @SuppressWarnings("UnusedReturnValue")
     private String executePut(URI url, String body) throws DssException {
         return new String(executePutAndReturnByteArray(url, body), UTF_8);
     }
@@ -204,10 +518,10 @@ public class DSSClient {
     private byte[] executePutAndReturnByteArray(URI url, String body) throws DssException {
         log.debug("Executing PUT request to " + url);
 
-        try (HttpClientWithContext client = createHttpClient()) {
-            HttpPut request = new HttpPut(url);
-            request.setEntity(new StringEntity(body, "UTF-8"));
-            HttpResponse response = executeRequest(request, client);
+        HttpPut request = new HttpPut(url);
+        request.setEntity(new StringEntity(body, "UTF-8"));
+        try (HttpClientWithContext client = createHttpClient();
+             CloseableHttpResponse response = executeRequest(request, client)) {
             return ByteStreams.toByteArray(response.getEntity().getContent());
         } catch (DssException e) {
             throw e;
@@ -216,17 +530,83 @@ public class DSSClient {
         }
     }
 
+    @NotNull
+    private static HttpPost createArchiveUploadRequest(URI url, String name, ContentWriter writer) {
+        // Sent as a multipart form (like a browser upload), the archive being streamed while the request is written.
+        String boundary = "----DSSArchive" + UUID.randomUUID().toString().replace("-", "");
+        HttpPost request = new HttpPost(url);
+        request.setHeader("content-type", "multipart/form-data; boundary=" + boundary);
+        EntityTemplate entity = new EntityTemplate(out -> {
+            out.write(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + name + ".zip\"\r\n"
+                    + "Content-Type: application/zip\r\n\r\n").getBytes(UTF_8));
+            writer.write(out);
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(UTF_8));
+        });
+        entity.setChunked(true);
+        request.setEntity(entity);
+        return request;
+    }
+
+    /**
+     * @param notSupportedUrls DSS instances known not to support this kind of archive transfer. Only a clear refusal of the method (405 or
+     *                         501) is remembered: a 404 may come from a missing item as well as from a missing endpoint, so it only makes
+     *                         this transfer fall back to per-file transfers.
+     * @return false if the DSS instance does not support the archive transfer.
+     */
+    private boolean executeArchiveRequest(HttpRequestBase request, ContentReader<?> reader, Set<String> notSupportedUrls) throws DssException {
+        if (notSupportedUrls.contains(baseUrl)) {
+            return false;
+        }
+        log.debug("Executing archive request to " + request.getURI());
+        try (HttpClientWithContext client = createHttpClient()) {
+            CloseableHttpResponse response;
+            try {
+                response = executeRequest(request, client);
+            } catch (DssException e) {
+                if (e.getCode() == 405 || e.getCode() == 501) {
+                    log.info(String.format("DSS instance '%s' does not support archive transfers like %s (code %d), falling back to per-file transfers.", baseUrl, request.getURI(), e.getCode()));
+                    notSupportedUrls.add(baseUrl);
+                    return false;
+                }
+                if (e.getCode() == 404) {
+                    log.info(String.format("DSS instance '%s' returned 404 for %s, falling back to per-file transfers.", baseUrl, request.getURI()));
+                    return false;
+                }
+                throw e;
+            }
+            try (CloseableHttpResponse ignored = response;
+                 InputStream content = response.getEntity().getContent()) {
+                reader.read(content);
+            }
+            return true;
+        } catch (DssException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DssException(e);
+        }
+    }
+
     private <T> T executeGet(URI url, Class<T> clazz) throws DssException {
-        String body = executeGet(url);
+        // Parsed while it is received, so that large listings are never held in memory as a whole.
+        return executeGet(url, content -> parseJson(content, clazz));
+    }
+
+    private static <T> T parseJson(InputStream content, Class<T> clazz) throws DssException {
         try {
-            return new GsonBuilder().create().fromJson(body, clazz);
-        } catch (RuntimeException e) {
-            String errorMsg = "Unable to parse response returned by DSS as " + clazz + ":\n" + body;
-            log.warn(errorMsg);
-            throw new DssException(errorMsg);
+            return new GsonBuilder().create().fromJson(new JsonReader(new InputStreamReader(content, UTF_8)), clazz);
+        } catch (JsonParseException e) {
+            String errorMsg = "Unable to parse response returned by DSS as " + clazz;
+            log.warn(errorMsg, e);
+            throw new DssException(errorMsg, e);
         }
     }
 
+    private static boolean isJson(HttpEntity entity) {
+        Header contentType = entity.getContentType();
+        return contentType != null && contentType.getValue().startsWith("application/json");
+    }
+
     @NotNull
     private String executeGet(URI url) throws DssException {
         return new String(executeGetAndReturnByteArray(url), UTF_8);
@@ -234,11 +614,16 @@ public class DSSClient {
 
     @NotNull
     private byte[] executeGetAndReturnByteArray(URI url) throws DssException {
+        return executeGet(url, ByteStreams::toByteArray);
+    }
+
+    private <T> T executeGet(URI url, ContentReader<T> reader) throws DssException {
         log.debug("Executing GET request to " + url);
         try {
-            try (HttpClientWithContext client = createHttpClient()) {
-                HttpResponse response = executeRequest(new HttpGet(url), client);
-                return ByteStreams.toByteArray(response.getEntity().getContent());
+            try (HttpClientWithContext client = createHttpClient();
+                 CloseableHttpResponse response = executeRequest(new HttpGet(url), client);
+                 InputStream content = response.getEntity().getContent()) {
+                return reader.read(content);
             }
         } catch (DssException e) {
             throw e;
@@ -247,11 +632,26 @@ public class DSSClient {
         }
     }
 
+    private void executePost(URI url, HttpEntity entity) throws DssException {
+        log.debug("Executing POST request to " + url);
+        HttpPost request = new HttpPost(url);
+        request.setEntity(entity);
+        try (HttpClientWithContext client = createHttpClient();
+             CloseableHttpResponse response = executeRequest(request, client)) {
+            EntityUtils.consume(response.getEntity());
+        } catch (DssException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DssException(e);
+        }
+    }
+
     private void executeDelete(URI url) throws DssException {
         log.debug("Executing DELETE request to " + url);
         try {
-            try (HttpClientWithContext client = createHttpClient()) {
-                executeRequest(new HttpDelete(url), client);
+            try (HttpClientWithContext client = createHttpClient();
+                 CloseableHttpResponse response = executeRequest(new HttpDelete(url), client)) {
+                EntityUtils.consume(response.getEntity());
             }
         } catch (DssException e) {
             throw e;
@@ -260,25 +660,84 @@ public class DSSClient {
         }
     }
 
+    /**
+     * Executes the request. The returned response must be closed by the caller once its entity has been fully read, so that the
+     * underlying connection can be reused by subsequent requests.
+     */
     @NotNull
-    private HttpResponse executeRequest(HttpRequestBase request, HttpClientWithContext client) throws DssException {
+    private CloseableHttpResponse executeRequest(HttpRequestBase request, HttpClientWithContext client) throws DssException {
         addJsonContentTypeHeader(request);
         addAuthorizationHeader(request);
-        HttpResponse response;
+        DssMetrics.EndpointStats stats = DssMetrics.getInstance().getEndpointStats(baseUrl, request.getMethod(), getEndpoint(request.getURI()));
+        if (request instanceof HttpEntityEnclosingRequestBase) {
+            HttpEntityEnclosingRequestBase requestWithEntity = (HttpEntityEnclosingRequestBase) request;
+            if (requestWithEntity.getEntity() != null) {
+                requestWithEntity.setEntity(new MeteredEntity(requestWithEntity.getEntity(), stats::bytesSent));
+            }
+        }
+        CloseableHttpResponse response;
+        long startNanos = System.nanoTime();
         try {
-            response = client.client.execute(request, client.context);
+            response = client.client.execute(request, client.createContext());
         } catch (IOException e) {
+            stats.requestCompleted(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), false);
             throw new DssException(e);
         }
         int statusCode = response.getStatusLine().getStatusCode();
+        stats.requestCompleted(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), statusCode == 200);
+        if (response.getEntity() != null) {
+            response.setEntity(new MeteredEntity(response.getEntity(), stats::bytesReceived));
+        }
         if (statusCode != 200) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            closeQuietly(response);
             throw new DssException(statusCode, "DSS" + (client.useProxy ? " or HTTP proxy" : "") + " returned error code " + statusCode + ".");
         }
         return response;
     }
 
+    /**
+     * Returns the path of the given URL relative to the public API, with identifiers and file paths replaced by "*" so that requests can
+     * be aggregated per endpoint (e.g. "plugins/&#42;/contents/&#42;").
+     */
+    private static String getEndpoint(URI url) {
+        String path = url.getPath();
+        int start = path.indexOf(PUBLIC_API + '/');
+        if (start < 0) {
+            return path;
+        }
+        String[] segments = path.substring(start + PUBLIC_API.length() + 1).split("/", -1);
+        StringBuilder endpoint = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (i > 0) {
+                endpoint.append('/');
+            }
+            endpoint.append(segment.isEmpty() || ENDPOINT_SEGMENTS.contains(segment) ? segment : "*");
+            if (segment.equals(CONTENTS) || segment.equals(FOLDERS)) {
+                // Whatever follows is a path inside the plugin or library
+                if (i + 1 < segments.length) {
+                    boolean root = String.join("", asList(segments).subList(i + 1, segments.length)).isEmpty();
+                    endpoint.append(root ? "/" : "/*");
+                }
+                break;
+            }
+        }
+        return endpoint.toString();
+    }
+
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            log.debug("Unable to close HTTP response", e);
+        }
+    }
+
     private void addJsonContentTypeHeader(HttpRequestBase request) {
-        request.addHeader("content-type", "application/json");
+        if (!request.containsHeader("content-type")) {
+            request.addHeader("content-type", "application/json");
+        }
     }
 
     private void addAuthorizationHeader(HttpRequestBase request) {
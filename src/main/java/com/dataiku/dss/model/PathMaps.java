@@ -0,0 +1,21 @@
+package com.dataiku.dss.model;
+
+import java.util.NavigableMap;
+
+/**
+ * Lookups in sorted maps keyed by '/'-separated paths (or URLs).
+ */
+public final class PathMaps {
+
+    private PathMaps() {
+    }
+
+    /**
+     * Returns a view of the entries of the given map nested under the given path, i.e. whose key starts with "path/". The entry of the
+     * path itself is not included.
+     */
+    public static <V> NavigableMap<String, V> nestedUnder(NavigableMap<String, V> map, String path) {
+        // '0' is the character following '/', so this range contains exactly the keys starting with "path/".
+        return map.subMap(path + "/", true, path + "0", false);
+    }
+}
@@ -7,6 +7,7 @@ public class FolderContent {
     public String path;
     public String mimeType;
     public long size;
+    public long lastModified; // 0 if not returned by DSS
     public List<FolderContent> children;
     public String data; // the file's data. Null when listing
     public boolean hasData;
@@ -19,6 +20,7 @@ public class FolderContent {
                 ", path='" + path + '\'' +
                 ", mimeType='" + mimeType + '\'' +
                 ", size=" + size +
+                ", lastModified=" + lastModified +
                 ", children=" + children +
                 ", data='" + data + '\'' +
                 ", hasData=" + hasData +
@@ -1,6 +1,9 @@
 package com.dataiku.dss.model.dss;
 
+import com.google.gson.JsonObject;
+
 public class RecipeAndPayload {
     public Recipe recipe;
     public String payload;
+    public transient JsonObject document; // Document as returned by DSS, so that it can be saved back without being loaded again
 }
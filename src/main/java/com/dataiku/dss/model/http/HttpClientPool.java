@@ -0,0 +1,127 @@
+package com.dataiku.dss.model.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.dataiku.dss.Logger;
+import com.dataiku.dss.model.dss.DssException;
+
+/**
+ * Long-lived HTTP clients, one per DSS instance (base URL and certificate checking policy), so that consecutive requests reuse
+ * already established TCP/TLS connections instead of paying a full handshake each time.
+ * <p>
+ * Clients are rebuilt when the IDE proxy settings change, or when {@link #invalidateAll()} is called after a change of the DSS settings.
+ * Clients handed out by {@link #acquire(String, boolean)} must be closed by the caller: this only releases them, and the underlying
+ * client is actually closed once it has been replaced and is not used by any in-flight request anymore.
+ */
+public class HttpClientPool {
+    private static final Logger log = Logger.getInstance(HttpClientPool.class);
+    private static final HttpClientPool INSTANCE = new HttpClientPool();
+
+    private final Map<PoolKey, PooledHttpClient> clients = new HashMap<>();
+
+    public static HttpClientPool getInstance() {
+        return INSTANCE;
+    }
+
+    public HttpClientWithContext acquire(String baseUrl, boolean noCheckCertificate) throws DssException {
+        ProxyConfiguration proxyConfig = ProxyConfigurationFactory.getProxyConfiguration(baseUrl);
+        PoolKey key = new PoolKey(baseUrl, noCheckCertificate);
+        synchronized (this) {
+            PooledHttpClient pooledClient = clients.get(key);
+            if (pooledClient != null && !pooledClient.proxyConfig.equals(proxyConfig)) {
+                log.info(String.format("Proxy settings changed, recreating HTTP client for '%s'", baseUrl));
+                clients.remove(key);
+                pooledClient.retire();
+                pooledClient = null;
+            }
+            if (pooledClient == null) {
+                log.info(String.format("Creating HTTP client for '%s'", baseUrl));
+                pooledClient = new PooledHttpClient(new HttpClientWithContextBuilder(baseUrl, noCheckCertificate).build(proxyConfig), proxyConfig);
+                clients.put(key, pooledClient);
+            }
+            return pooledClient.lease();
+        }
+    }
+
+    public void invalidateAll() {
+        List<PooledHttpClient> retiredClients;
+        synchronized (this) {
+            retiredClients = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        for (PooledHttpClient retiredClient : retiredClients) {
+            retiredClient.retire();
+        }
+    }
+
+    private static class PooledHttpClient {
+        private final HttpClientWithContext httpClient;
+        private final ProxyConfiguration proxyConfig;
+        private int leases;
+        private boolean retired;
+
+        PooledHttpClient(HttpClientWithContext httpClient, ProxyConfiguration proxyConfig) {
+            this.httpClient = httpClient;
+            this.proxyConfig = proxyConfig;
+        }
+
+        synchronized HttpClientWithContext lease() {
+            leases++;
+            return httpClient.withCloseAction(this::release);
+        }
+
+        private synchronized void release() {
+            leases--;
+            if (retired && leases == 0) {
+                closeQuietly();
+            }
+        }
+
+        synchronized void retire() {
+            retired = true;
+            if (leases == 0) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.info("Unable to close HTTP client", e);
+            }
+        }
+    }
+
+    private static class PoolKey {
+        private final String baseUrl;
+        private final boolean noCheckCertificate;
+
+        PoolKey(String baseUrl, boolean noCheckCertificate) {
+            this.baseUrl = baseUrl;
+            this.noCheckCertificate = noCheckCertificate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PoolKey that = (PoolKey) o;
+            return noCheckCertificate == that.noCheckCertificate && Objects.equals(baseUrl, that.baseUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, noCheckCertificate);
+        }
+    }
+}
@@ -2,23 +2,52 @@ package com.dataiku.dss.model.http;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.protocol.HttpContext;
+import org.jetbrains.annotations.Nullable;
 
 public class HttpClientWithContext implements Closeable {
     public final CloseableHttpClient client;
-    public final HttpContext context;
     public final boolean useProxy;
+    private final InetSocketAddress socksAddress;
+    private final Closeable closeAction;
 
-    public HttpClientWithContext(CloseableHttpClient client, HttpContext context, boolean useProxy) {
+    public HttpClientWithContext(CloseableHttpClient client, @Nullable InetSocketAddress socksAddress, boolean useProxy) {
+        this(client, socksAddress, useProxy, client);
+    }
+
+    private HttpClientWithContext(CloseableHttpClient client, @Nullable InetSocketAddress socksAddress, boolean useProxy, Closeable closeAction) {
         this.client = client;
-        this.context = context;
+        this.socksAddress = socksAddress;
         this.useProxy = useProxy;
+        this.closeAction = closeAction;
+    }
+
+    /**
+     * Returns a view on the same underlying client whose {@link #close()} runs the given action instead of closing the client.
+     */
+    HttpClientWithContext withCloseAction(Closeable closeAction) {
+        return new HttpClientWithContext(client, socksAddress, useProxy, closeAction);
+    }
+
+    /**
+     * Creates the context of a single request. Contexts are not thread-safe, so they must not be shared between concurrent requests.
+     */
+    @Nullable
+    public HttpContext createContext() {
+        if (socksAddress == null) {
+            return null;
+        }
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute("socks.address", socksAddress);
+        return context;
     }
 
     @Override
     public void close() throws IOException {
-        this.client.close();
+        closeAction.close();
     }
 }
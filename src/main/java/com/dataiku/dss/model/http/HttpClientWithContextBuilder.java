@@ -4,6 +4,7 @@ import java.net.InetSocketAddress;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 
@@ -11,23 +12,37 @@ import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.SSLContexts;
 import org.apache.http.ssl.SSLInitializationException;
 
+import com.dataiku.dss.Logger;
+import com.dataiku.dss.metrics.DssMetrics;
 import com.dataiku.dss.model.dss.DssException;
 
 public class HttpClientWithContextBuilder {
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+    private static final int MAX_CONNECTIONS_TOTAL = 32;
+    private static final long DEFAULT_KEEP_ALIVE_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_IDLE_TIME_SECONDS = 60;
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private static final Logger log = Logger.getInstance(HttpClientWithContextBuilder.class);
+
     private final String baseUrl;
     private final boolean noCheckCertificate;
 
@@ -37,34 +52,69 @@ public class HttpClientWithContextBuilder {
     }
 
     public HttpClientWithContext build() throws DssException {
+        return build(ProxyConfigurationFactory.getProxyConfiguration(baseUrl));
+    }
+
+    /**
+     * Builds a client backed by a pool of keep-alive connections, so that it can be shared by all requests sent to the same DSS instance.
+     */
+    public HttpClientWithContext build(ProxyConfiguration proxyConfig) throws DssException {
         HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        HttpClientContext context = null;
+        InetSocketAddress socksAddress = null;
+        Registry<ConnectionSocketFactory> socketFactoryRegistry;
 
-        ProxyConfiguration proxyConfig = ProxyConfigurationFactory.getProxyConfiguration(baseUrl);
         boolean useProxy = proxyConfig.isEnabled();
-        if (!useProxy) {
-            httpClientBuilder.setSSLSocketFactory(new SSLConnectionSocketFactory(buildSSLContext(), buildHostNameVerifier()));
+        if (useProxy && proxyConfig.isSock()) {
+            if (proxyConfig.hasAuthentication()) {
+                throw new DssException("Socks proxy with authentication is not supported by DSS plugin");
+            }
+            socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", new ConnectionSocketViaProxyFactory())
+                    .register("https", new SSLConnectionSocketViaProxyFactory(buildSSLContext(), buildHostNameVerifier()))
+                    .build();
+            socksAddress = new InetSocketAddress(proxyConfig.host, proxyConfig.port);
         } else {
-            if (proxyConfig.isSock()) {
-                if (proxyConfig.hasAuthentication()) {
-                    throw new DssException("Socks proxy with authentication is not supported by DSS plugin");
-                }
-                Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
-                        .register("http", new ConnectionSocketViaProxyFactory())
-                        .register("https", new SSLConnectionSocketViaProxyFactory(buildSSLContext(), buildHostNameVerifier()))
-                        .build();
-                PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
-                httpClientBuilder.setConnectionManager(connectionManager);
-
-                context = HttpClientContext.create();
-                context.setAttribute("socks.address", new InetSocketAddress(proxyConfig.host, proxyConfig.port));
-            } else {
-                httpClientBuilder.setSSLSocketFactory(new SSLConnectionSocketFactory(buildSSLContext(), buildHostNameVerifier()));
+            socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", new SSLConnectionSocketFactory(buildSSLContext(), buildHostNameVerifier()))
+                    .build();
+            if (useProxy) {
                 httpClientBuilder.setProxy(new HttpHost(proxyConfig.host, proxyConfig.port));
                 httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider(proxyConfig));
             }
         }
-        return new HttpClientWithContext(httpClientBuilder.build(), context, useProxy);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+        httpClientBuilder.setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy())
+                .evictExpiredConnections()
+                .evictIdleConnections(MAX_IDLE_TIME_SECONDS, TimeUnit.SECONDS)
+                .setRetryHandler(retryHandler());
+
+        return new HttpClientWithContext(httpClientBuilder.build(), socksAddress, useProxy);
+    }
+
+    private HttpRequestRetryHandler retryHandler() {
+        // Same policy as the default handler, but retries are counted so that a flaky network shows up in the metrics.
+        return (exception, executionCount, context) -> {
+            boolean retry = DefaultHttpRequestRetryHandler.INSTANCE.retryRequest(exception, executionCount, context);
+            if (retry) {
+                log.info("Retrying request to " + baseUrl + " after I/O error: " + exception);
+                DssMetrics.getInstance().requestRetried(baseUrl);
+            }
+            return retry;
+        };
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy() {
+        // Honor the Keep-Alive header sent by DSS (or by the proxy), but never keep a connection open forever otherwise.
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MS;
+        };
     }
 
     private CredentialsProvider credentialsProvider(ProxyConfiguration proxyConfig) {
@@ -0,0 +1,63 @@
+package com.dataiku.dss.model.http;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Entity reporting the number of bytes actually read from or written to the wire, without buffering the wrapped entity.
+ */
+public class MeteredEntity extends HttpEntityWrapper {
+    private final LongConsumer byteCounter;
+
+    public MeteredEntity(HttpEntity wrappedEntity, LongConsumer byteCounter) {
+        super(wrappedEntity);
+        this.byteCounter = byteCounter;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new FilterInputStream(super.getContent()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    byteCounter.accept(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    byteCounter.accept(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        super.writeTo(new FilterOutputStream(outStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                byteCounter.accept(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                byteCounter.accept(len);
+            }
+        });
+    }
+}
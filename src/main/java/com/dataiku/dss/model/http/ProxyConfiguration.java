@@ -1,5 +1,7 @@
 package com.dataiku.dss.model.http;
 
+import java.util.Objects;
+
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -35,4 +37,25 @@ public class ProxyConfiguration {
         return sockProxy;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProxyConfiguration that = (ProxyConfiguration) o;
+        return port == that.port &&
+                sockProxy == that.sockProxy &&
+                Objects.equals(host, that.host) &&
+                Objects.equals(username, that.username) &&
+                Objects.equals(password, that.password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, sockProxy, username, password);
+    }
+
 }
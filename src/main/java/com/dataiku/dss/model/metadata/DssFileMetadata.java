@@ -5,11 +5,15 @@ public class DssFileMetadata {
     public final String id;
     public final String path;
     public final String remotePath;
-    public int contentHash;
+    public long contentHash;
     public String dataBlobId;
     public byte[] data; // Present if not flushed yet into a data-blob
+    public long remoteSize; // Size of the remote file when last synchronized
+    public long remoteLastModified; // Last modification date of the remote file when last synchronized, 0 if unknown
+    public long localSize; // Size of the local file (as seen by the VFS) when its content was last found to match contentHash
+    public long localLastModified; // Last modification date of the local file (as seen by the VFS) when its content was last found to match contentHash, 0 if unknown
 
-    public DssFileMetadata(String instance, String id, String path, String remotePath, int contentHash, String dataBlobId) {
+    public DssFileMetadata(String instance, String id, String path, String remotePath, long contentHash, String dataBlobId) {
         this.instance = instance;
         this.id = id;
         this.path = path;
@@ -18,7 +22,7 @@ public class DssFileMetadata {
         this.dataBlobId = dataBlobId;
     }
 
-    public DssFileMetadata(String instance, String id, String path, String remotePath, int contentHash, byte[] data) {
+    public DssFileMetadata(String instance, String id, String path, String remotePath, long contentHash, byte[] data) {
         this.instance = instance;
         this.id = id;
         this.path = path;
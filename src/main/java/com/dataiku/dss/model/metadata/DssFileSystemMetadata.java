@@ -1,37 +1,92 @@
 package com.dataiku.dss.model.metadata;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.dataiku.dss.model.PathMaps;
+import com.google.common.base.Preconditions;
 
 public class DssFileSystemMetadata {
     public String instance;
     public String path;
     public String id;
-    public List<DssFileMetadata> files;
+    public List<DssFileMetadata> files; // Once indexed, only modify through addOrUpdateFile() & removeFile*()
+    private transient NavigableMap<String, Integer> fileIndexes; // Position in 'files' of each file, by remote path. Null until indexed.
 
     public DssFileSystemMetadata(String instance, String path, String id) {
         this.instance = instance;
         this.id = id;
         this.path = path;
         this.files = new ArrayList<>();
+        this.fileIndexes = new TreeMap<>();
     }
 
-    public DssFileMetadata findFile(String path) {
+    /**
+     * Indexes the files read from a metadata file, keeping only the last entry of each path, as older versions of the plugin may have
+     * tracked the same file several times. Must be called once, before any other method, while no other thread can see these files.
+     */
+    public void indexFiles() {
+        Map<String, DssFileMetadata> filesByPath = new LinkedHashMap<>();
         for (DssFileMetadata file : files) {
-            if (path.equals(file.remotePath)) {
-                return file;
-            }
+            filesByPath.put(file.remotePath, file);
+        }
+        if (filesByPath.size() != files.size()) {
+            files.clear();
+            files.addAll(filesByPath.values());
+        }
+        fileIndexes = new TreeMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            fileIndexes.put(files.get(i).remotePath, i);
+        }
+    }
+
+    public DssFileMetadata findFile(String path) {
+        Integer index = getFileIndexes().get(path);
+        return index == null ? null : files.get(index);
+    }
+
+    public void addOrUpdateFile(DssFileMetadata file) {
+        NavigableMap<String, Integer> fileIndexes = getFileIndexes();
+        Integer index = fileIndexes.get(file.remotePath);
+        if (index != null) {
+            files.set(index, file);
+        } else {
+            fileIndexes.put(file.remotePath, files.size());
+            files.add(file);
+        }
+    }
+
+    public DssFileMetadata removeFile(String path) {
+        Integer index = getFileIndexes().remove(path);
+        if (index == null) {
+            return null;
+        }
+        // Move the last file into the freed slot instead of shifting all the following ones.
+        DssFileMetadata removed = files.get(index);
+        DssFileMetadata last = files.remove(files.size() - 1);
+        if (index < files.size()) {
+            files.set(index, last);
+            fileIndexes.put(last.remotePath, index);
         }
-        return null;
+        return removed;
     }
 
-    public void removeFile(String path) {
-        for (Iterator<DssFileMetadata> iterator = files.iterator(); iterator.hasNext(); ) {
-            if (path.equals(iterator.next().remotePath)) {
-                iterator.remove();
-                return;
-            }
+    /**
+     * Removes the file or folder located at the given path, and all the files nested under it.
+     */
+    public void removeFileAndChildren(String path) {
+        removeFile(path);
+        for (String childPath : new ArrayList<>(PathMaps.nestedUnder(getFileIndexes(), path).keySet())) {
+            removeFile(childPath);
         }
     }
+
+    private NavigableMap<String, Integer> getFileIndexes() {
+        Preconditions.checkState(fileIndexes != null, "Files of '%s' have not been indexed", id);
+        return fileIndexes;
+    }
 }
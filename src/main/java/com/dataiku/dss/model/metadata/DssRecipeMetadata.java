@@ -5,7 +5,7 @@ public class DssRecipeMetadata {
     public String projectKey;
     public String recipeName;
     public String path;
-    public int contentHash;
+    public long contentHash;
     public String dataBlobId;
     public transient byte[] data; // Present if not flushed yet into a data-block
     public long versionNumber;
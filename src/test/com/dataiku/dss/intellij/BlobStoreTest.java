@@ -0,0 +1,45 @@
+package com.dataiku.dss.intellij;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlobStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepStoredFilesUntilReferenced() throws IOException {
+        BlobStore blobStore = new BlobStore(temporaryFolder.newFolder("blobs"));
+        File source = temporaryFolder.newFile("recipe.py");
+        Files.write(source.toPath(), "print('hello')".getBytes(UTF_8));
+
+        // The metadata entry referencing the blob is not added yet when the metadata file is written
+        String blobId = blobStore.write(source);
+        blobStore.retainOnly(Collections.emptySet());
+        assertArrayEquals("print('hello')".getBytes(UTF_8), blobStore.read(blobId));
+
+        // Once referenced by a written metadata file, the blob is garbage-collected as soon as it is not anymore
+        blobStore.retainOnly(Collections.singleton(blobId));
+        blobStore.retainOnly(Collections.emptySet());
+        assertNull(blobStore.read(blobId));
+    }
+
+    @Test
+    public void shouldDeleteUnreferencedBlobs() throws IOException {
+        BlobStore blobStore = new BlobStore(temporaryFolder.newFolder("blobs"));
+        String blobId = blobStore.write("print('hello')".getBytes(UTF_8));
+
+        blobStore.retainOnly(Collections.emptySet());
+        assertNull(blobStore.read(blobId));
+    }
+}
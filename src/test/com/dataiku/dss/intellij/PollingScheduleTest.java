@@ -0,0 +1,85 @@
+package com.dataiku.dss.intellij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PollingScheduleTest {
+
+    @Test
+    public void shouldBackOffWhileIdleUpToMaximum() {
+        PollingSchedule schedule = new PollingSchedule(60, true, new Random(42));
+        assertDelay(schedule, 60);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 120);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 240);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 480);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 480);
+    }
+
+    @Test
+    public void shouldPollFasterAfterChange() {
+        PollingSchedule schedule = new PollingSchedule(120, true, new Random(42));
+        schedule.pollCompleted(false);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 480);
+
+        schedule.pollCompleted(true);
+        for (int i = 0; i < 5; i++) {
+            assertDelay(schedule, 30);
+            schedule.pollCompleted(false);
+        }
+        // Back to the configured interval once the fast polls are over, then backing off again
+        assertDelay(schedule, 120);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 240);
+    }
+
+    @Test
+    public void shouldKeepConfiguredIntervalWhenNotAdaptive() {
+        PollingSchedule schedule = new PollingSchedule(120, false, new Random(42));
+        schedule.pollCompleted(false);
+        schedule.pollCompleted(false);
+        assertDelay(schedule, 120);
+        schedule.changeSeen();
+        assertDelay(schedule, 120);
+        assertEquals(120_000, schedule.getFastIntervalMillis());
+    }
+
+    @Test
+    public void shouldClampIntervalsToMinimum() {
+        PollingSchedule schedule = new PollingSchedule(1, true, new Random(42));
+        assertEquals(PollingSchedule.MIN_INTERVAL_SECONDS, schedule.getIntervalSeconds());
+
+        schedule = new PollingSchedule(20, true, new Random(42));
+        assertEquals(PollingSchedule.MIN_INTERVAL_SECONDS * 1000L, schedule.getFastIntervalMillis());
+        schedule.changeSeen();
+        assertDelay(schedule, PollingSchedule.MIN_INTERVAL_SECONDS);
+    }
+
+    @Test
+    public void shouldKeepJitterWithinTenPercent() {
+        PollingSchedule schedule = new PollingSchedule(100, false, new Random(42));
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = schedule.nextDelayMillis();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min >= 90_000 && max <= 110_000);
+        // Delays are actually spread, so that IDEs do not poll in lockstep
+        assertTrue(max - min > 10_000);
+    }
+
+    private static void assertDelay(PollingSchedule schedule, long expectedSeconds) {
+        long delay = schedule.nextDelayMillis();
+        assertTrue("Unexpected delay: " + delay, delay >= expectedSeconds * 900 && delay <= expectedSeconds * 1100);
+    }
+}
@@ -0,0 +1,40 @@
+package com.dataiku.dss.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldApproximatePercentilesWithBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(80);
+        }
+        histogram.record(70_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMillis(50));
+        assertEquals(100, histogram.getPercentileMillis(95));
+        assertEquals(70_000, histogram.getPercentileMillis(100));
+        assertEquals(70_000, histogram.getMaxMillis());
+        assertEquals((90 * 3 + 9 * 80 + 70_000) / 100, histogram.getMeanMillis());
+        assertEquals("<=5ms:90 <=100ms:9 >60000ms:1", histogram.formatBuckets());
+    }
+
+    @Test
+    public void shouldNotExceedMaximumDuration() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(7);
+        assertEquals(7, histogram.getPercentileMillis(99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(99));
+        assertEquals("", histogram.formatBuckets());
+    }
+}
@@ -0,0 +1,36 @@
+package com.dataiku.dss.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class PathMapsTest {
+
+    @Test
+    public void shouldReturnOnlyEntriesNestedUnderPath() {
+        NavigableMap<String, Integer> map = new TreeMap<>();
+        for (String path : Arrays.asList("python-lib", "python-lib/utils.py", "python-lib/sub/helpers.py", "python-lib-old/utils.py", "python-lib.txt", "python-lib0")) {
+            map.put(path, path.length());
+        }
+
+        assertEquals(Arrays.asList("python-lib/sub/helpers.py", "python-lib/utils.py"), new ArrayList<>(PathMaps.nestedUnder(map, "python-lib").keySet()));
+        assertEquals(0, PathMaps.nestedUnder(map, "python-lib/utils.py").size());
+    }
+
+    @Test
+    public void shouldRemoveNestedEntriesThroughView() {
+        NavigableMap<String, Integer> map = new TreeMap<>();
+        map.put("a", 0);
+        map.put("a/b", 1);
+        map.put("a/b/c", 2);
+        map.put("ab", 3);
+
+        PathMaps.nestedUnder(map, "a").clear();
+        assertEquals(Arrays.asList("a", "ab"), new ArrayList<>(map.keySet()));
+    }
+}
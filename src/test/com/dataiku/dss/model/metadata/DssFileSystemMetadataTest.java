@@ -0,0 +1,63 @@
+package com.dataiku.dss.model.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+public class DssFileSystemMetadataTest {
+
+    @Test
+    public void shouldFindUpdateAndRemoveFiles() {
+        DssFileSystemMetadata metadata = new DssFileSystemMetadata("default", "my-plugin", "my-plugin");
+        metadata.addOrUpdateFile(file("plugin.json", 1));
+        metadata.addOrUpdateFile(file("python-lib", 0));
+        metadata.addOrUpdateFile(file("python-lib/utils.py", 2));
+
+        DssFileMetadata updated = file("plugin.json", 3);
+        metadata.addOrUpdateFile(updated);
+        assertEquals(3, metadata.files.size());
+        assertSame(updated, metadata.findFile("plugin.json"));
+
+        assertNotNull(metadata.removeFile("plugin.json"));
+        assertNull(metadata.findFile("plugin.json"));
+        assertEquals(2, metadata.findFile("python-lib/utils.py").contentHash);
+        assertEquals(2, metadata.files.size());
+    }
+
+    @Test
+    public void shouldRemoveFolderWithItsChildrenOnly() {
+        DssFileSystemMetadata metadata = new DssFileSystemMetadata("default", "my-plugin", "my-plugin");
+        metadata.addOrUpdateFile(file("python-lib", 0));
+        metadata.addOrUpdateFile(file("python-lib/utils.py", 1));
+        metadata.addOrUpdateFile(file("python-lib/sub/helpers.py", 2));
+        metadata.addOrUpdateFile(file("python-lib-old/utils.py", 3));
+        metadata.addOrUpdateFile(file("python-lib.txt", 4));
+
+        metadata.removeFileAndChildren("python-lib");
+        assertEquals(2, metadata.files.size());
+        assertNotNull(metadata.findFile("python-lib-old/utils.py"));
+        assertNotNull(metadata.findFile("python-lib.txt"));
+    }
+
+    @Test
+    public void shouldIndexFilesReadFromJson() {
+        DssFileSystemMetadata metadata = new DssFileSystemMetadata("default", "my-plugin", "my-plugin");
+        metadata.files.add(file("plugin.json", 1));
+        metadata.files.add(file("plugin.json", 2));
+        String json = new Gson().toJson(metadata);
+
+        DssFileSystemMetadata read = new Gson().fromJson(json, DssFileSystemMetadata.class);
+        read.indexFiles();
+        assertEquals(2, read.findFile("plugin.json").contentHash);
+        assertEquals(1, read.files.size());
+    }
+
+    private static DssFileMetadata file(String path, long contentHash) {
+        return new DssFileMetadata("default", "my-plugin", "my-plugin/" + path, path, contentHash, (String) null);
+    }
+}